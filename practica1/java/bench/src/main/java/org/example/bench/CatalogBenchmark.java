@@ -0,0 +1,56 @@
+package org.example.bench;
+
+import org.example.server.Catalog;
+import org.example.server.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// lecturas del catalogo: SEARCH, LIST y formato de lineas
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CatalogBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Catalog catalog;
+    private Product product;
+    private int i;
+
+    // terminos: marca completa (lista corta), fragmento de 3 letras (una lista) y uno largo (interseccion)
+    private static final String[] TERMS = {"casio", "ser", "licuadora 12", "tecl", "zzz"};
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        catalog = Catalogs.generate(size);
+        product = catalog.get(size / 2);
+    }
+
+    @Benchmark
+    public List<Product> search() {
+        return catalog.search(TERMS[i++ % TERMS.length]);
+    }
+
+    @Benchmark
+    public List<Product> listByType() {
+        return catalog.listByType(Catalogs.TYPES[i++ % Catalogs.TYPES.length]);
+    }
+
+    // linea en cache (el caso comun de SEARCH/LIST)
+    @Benchmark
+    public String productLineCached() {
+        return product.line();
+    }
+
+    // linea tras un cambio de stock (se vuelve a formatear)
+    @Benchmark
+    public String productLineAfterStockChange() {
+        product.adjustStock(0); // sube la version sin cambiar el numero
+        return product.line();
+    }
+}
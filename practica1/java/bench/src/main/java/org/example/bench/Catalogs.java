@@ -0,0 +1,33 @@
+package org.example.bench;
+
+import org.example.server.Catalog;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+// catalogos sinteticos para los benchmarks (se cargan por el mismo camino que products.json)
+final class Catalogs {
+    static final String[] TYPES = {"ELECTRONICA", "ROPA", "HOGAR", "ALIMENTOS", "DEPORTES", "JUGUETES", "LIBROS", "OFICINA"};
+    static final String[] WORDS = {"Auriculares", "Playera", "Sarten", "Cafe", "Monitor", "Teclado", "Tenis", "Gorra",
+            "Licuadora", "Avena", "Balon", "Cuaderno", "Lampara", "Mochila", "Reloj", "Bocina"};
+    static final String[] BRANDS = {"Sony", "Adidas", "T-fal", "Gourmet", "Samsung", "Logitech", "Puma", "Nike",
+            "Ninja", "Quaker", "Wilson", "Scribe", "Philips", "Jansport", "Casio", "JBL"};
+
+    // 'n' productos con ids 1..n, stock alto para que las compras no se agoten
+    static Catalog generate(int n) throws Exception {
+        StringBuilder sb = new StringBuilder(n * 110).append('[');
+        for (int id = 1; id <= n; id++) {
+            if (id > 1) sb.append(',');
+            sb.append("{\"id\":").append(id)
+              .append(",\"name\":\"").append(WORDS[id % WORDS.length]).append(' ').append(id % 997)
+              .append("\",\"brand\":\"").append(BRANDS[(id / 7) % BRANDS.length])
+              .append("\",\"type\":\"").append(TYPES[id % TYPES.length])
+              .append("\",\"price\":").append(10 + id % 5000).append(".5")
+              .append(",\"stock\":").append(1_000_000_000).append('}');
+        }
+        sb.append(']');
+        return Catalog.fromJson(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Catalogs() {}
+}
@@ -0,0 +1,51 @@
+package org.example.bench;
+
+import org.example.server.CommandLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// separar un comando: split/toUpperCase/parseInt contra CommandLine
+// con "-prof gc" JMH reporta ademas los bytes asignados por comando (gc.alloc.rate.norm)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParseBenchmark {
+    private static final String[] LINES = {
+            "ADD 101 2", "UPDATE 205 3", "REMOVE 301", "CART", "LIST ropa", "CHECKOUT", "add 402 10"
+    };
+
+    private final CommandLine cl = new CommandLine();
+    private int i;
+
+    // lo que hacia ClientHandler antes: regex, mayusculas y parseInt sobre Strings nuevos
+    @Benchmark
+    public long legacy() {
+        String[] tok = LINES[i++ % LINES.length].split("\\s+");
+        String cmd = tok[0].toUpperCase(Locale.ROOT);
+        long acc = cmd.length();
+        switch (cmd) {
+            case "ADD", "UPDATE" -> acc += Integer.parseInt(tok[1]) + Integer.parseInt(tok[2]);
+            case "REMOVE" -> acc += Integer.parseInt(tok[1]);
+            default -> acc += tok.length;
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public long tokenizer() {
+        cl.parse(LINES[i++ % LINES.length]);
+        int op = cl.op();
+        long acc = op;
+        switch (op) {
+            case CommandLine.ADD, CommandLine.UPDATE -> acc += cl.intAt(1) + cl.intAt(2);
+            case CommandLine.REMOVE -> acc += cl.intAt(1);
+            default -> acc += cl.count();
+        }
+        return acc;
+    }
+}
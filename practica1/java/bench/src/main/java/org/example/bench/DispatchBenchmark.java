@@ -0,0 +1,50 @@
+package org.example.bench;
+
+import org.example.server.ClientHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// despacho de comandos de ClientHandler en una sesion sin socket (la misma entrada que usa el modo NIO)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    private ClientHandler session;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        session = new ClientHandler(Catalogs.generate(1000));
+    }
+
+    @Benchmark
+    public String addAndRemove() {
+        session.handleCommand("ADD 17 2");
+        return session.handleCommand("REMOVE 17");
+    }
+
+    @Benchmark
+    public String cartThreeItems() {
+        session.handleCommand("ADD 1 1");
+        session.handleCommand("ADD 2 1");
+        session.handleCommand("ADD 3 1");
+        String r = session.handleCommand("CART");
+        session.handleCommand("UPDATE 1 0");
+        session.handleCommand("UPDATE 2 0");
+        session.handleCommand("UPDATE 3 0");
+        return r;
+    }
+
+    @Benchmark
+    public String listType() {
+        return session.handleCommand("LIST ropa");
+    }
+
+    @Benchmark
+    public String unknownCommand() {
+        return session.handleCommand("FOO 1 2");
+    }
+}
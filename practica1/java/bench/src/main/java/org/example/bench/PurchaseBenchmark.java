@@ -0,0 +1,60 @@
+package org.example.bench;
+
+import org.example.server.Catalog;
+import org.example.server.IntIntMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Catalog.tryPurchase con 1..N hilos; carritos de 'items' productos al azar
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PurchaseBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    // 0 = candados por franja; > 0 = combinador con lotes de ese tamano
+    @Param({"0", "64"})
+    public int combineBatch;
+
+    // productos distintos por carrito: mas productos = mas franjas de candado por compra
+    @Param({"3"})
+    public int items;
+
+    private Catalog catalog;
+
+    @State(Scope.Thread)
+    public static class Cart {
+        final IntIntMap items = new IntIntMap();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        catalog = Catalogs.generate(size);
+        if (combineBatch > 0) catalog.enableCombiner(combineBatch);
+    }
+
+    private boolean buy(Cart c) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        c.items.clear();
+        while (c.items.size() < items) c.items.put(1 + rnd.nextInt(size), 1);
+        return catalog.tryPurchase(c.items);
+    }
+
+    @Benchmark @Threads(1)
+    public boolean tryPurchase1(Cart c) { return buy(c); }
+
+    @Benchmark @Threads(2)
+    public boolean tryPurchase2(Cart c) { return buy(c); }
+
+    @Benchmark @Threads(4)
+    public boolean tryPurchase4(Cart c) { return buy(c); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public boolean tryPurchaseMax(Cart c) { return buy(c); }
+}
@@ -0,0 +1,101 @@
+package org.example.client;
+
+import org.example.server.BinaryProtocol;
+
+import java.io.*;
+import java.net.Socket;
+
+// cliente del protocolo binario, pensado para programas que cargan pedidos en automatico
+// uso: java ... org.example.client.BinaryShopClient <host> <port> <id> <cant> [<id> <cant> ...]
+public class BinaryShopClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final BufferedOutputStream out;
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(16);
+    private int lastError; // codigo del ultimo error recibido
+
+    public BinaryShopClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream());
+        // descarta el saludo de texto y pide el modo binario
+        while (in.read() != '\n') {}
+        out.write(BinaryProtocol.MAGIC);
+        out.flush();
+        if (in.readByte() != BinaryProtocol.MAGIC)
+            throw new IOException("El servidor no acepto el protocolo binario");
+    }
+
+    public boolean add(int id, int qty) throws IOException { return simple(BinaryProtocol.OP_ADD, id, qty); }
+    public boolean update(int id, int qty) throws IOException { return simple(BinaryProtocol.OP_UPDATE, id, qty); }
+    public boolean remove(int id) throws IOException { return simple(BinaryProtocol.OP_REMOVE, id); }
+
+    // compra el carrito; devuelve el total en centavos o -1 si fallo
+    public long checkout() throws IOException {
+        send(BinaryProtocol.OP_CHECKOUT);
+        if (!status()) return -1;
+        readVarint(); // renglones comprados
+        return readVarint();
+    }
+
+    // devuelve {precio en centavos, stock} o null si el producto no existe
+    public long[] get(int id) throws IOException {
+        send(BinaryProtocol.OP_GET, id);
+        if (!status()) return null;
+        readVarint(); // id
+        return new long[]{readVarint(), readVarint()};
+    }
+
+    public int lastError() { return lastError; }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            send(BinaryProtocol.OP_QUIT);
+            status();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private boolean simple(byte op, long... args) throws IOException {
+        send(op, args);
+        return status();
+    }
+
+    private void send(byte op, long... args) throws IOException {
+        frame.reset();
+        frame.write(op);
+        for (long a : args) BinaryProtocol.writeVarint(frame, a);
+        frame.writeTo(out);
+        out.flush();
+    }
+
+    private boolean status() throws IOException {
+        if (in.readByte() == BinaryProtocol.STATUS_OK) return true;
+        lastError = (int) readVarint();
+        return false;
+    }
+
+    private long readVarint() throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (BinaryShopClient c = new BinaryShopClient(args[0], Integer.parseInt(args[1]))) {
+            for (int i = 2; i + 1 < args.length; i += 2) {
+                int id = Integer.parseInt(args[i]), qty = Integer.parseInt(args[i + 1]);
+                System.out.println("ADD " + id + " x" + qty + " -> " + (c.add(id, qty) ? "ok" : "error " + c.lastError()));
+            }
+            long total = c.checkout();
+            System.out.println(total < 0 ? "CHECKOUT -> error " + c.lastError()
+                    : String.format("CHECKOUT -> ok, total $%.2f", total / 100.0));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.client;
+
+// histograma de latencias log-lineal (estilo HdrHistogram): cada potencia de 2 de microsegundos
+// se parte en 32 sub-cubetas, asi el error relativo queda por debajo de ~3% en todo el rango
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5, SUB = 1 << SUB_BITS;
+    private final long[] counts = new long[64 * SUB];
+    private long total, max, sum;
+
+    public void record(long nanos) {
+        long us = Math.max(1, nanos / 1000);
+        counts[index(us)]++;
+        total++;
+        sum += us;
+        max = Math.max(max, us);
+    }
+
+    public void add(LatencyHistogram o) {
+        for (int i = 0; i < counts.length; i++) counts[i] += o.counts[i];
+        total += o.total;
+        sum += o.sum;
+        max = Math.max(max, o.max);
+    }
+
+    public long count() { return total; }
+    public long maxMicros() { return max; }
+    public double meanMicros() { return total == 0 ? 0 : (double) sum / total; }
+
+    // valor (us) bajo el cual queda la fraccion q de las muestras
+    public long percentile(double q) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total), seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upper(i));
+        }
+        return max;
+    }
+
+    private static int index(long us) {
+        int exp = 63 - Long.numberOfLeadingZeros(us);       // potencia de 2
+        if (exp < SUB_BITS) return (int) us;                // valores chicos: exactos
+        int sub = (int) ((us >>> (exp - SUB_BITS)) & (SUB - 1));
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // limite superior (us) de una cubeta
+    private static long upper(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1, sub = i % SUB;
+        return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
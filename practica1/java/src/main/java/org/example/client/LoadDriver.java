@@ -0,0 +1,200 @@
+package org.example.client;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// generador de carga sin interfaz: N conexiones que repiten una mezcla de comandos a una tasa fija
+// la latencia se mide desde el momento en que el comando DEBIA enviarse (no cuando se envio):
+// si el servidor se atrasa, la espera acumulada cuenta (correccion de "coordinated omission")
+// uso: java ... org.example.client.LoadDriver --connections=50 --rate=2000 --duration=30
+//                 --mix=search:40,list:30,add:20,checkout:10 [--host=127.0.0.1 --port=5000]
+public class LoadDriver {
+    private static final String[] COMMANDS = {"search", "list", "add", "checkout"};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> o = new HashMap<>(Map.of(
+                "host", "127.0.0.1", "port", "5000", "connections", "10", "rate", "500",
+                "duration", "10", "mix", "search:40,list:30,add:20,checkout:10",
+                "types", "ELECTRONICA,ROPA,HOGAR,ALIMENTOS"));
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (!a.startsWith("--") || eq < 0) throw new IllegalArgumentException("Argumento invalido: " + a);
+            o.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        String host = o.get("host");
+        int port = Integer.parseInt(o.get("port"));
+        int conns = Integer.parseInt(o.get("connections"));
+        double rate = Double.parseDouble(o.get("rate"));
+        int seconds = Integer.parseInt(o.get("duration"));
+        int[] weights = parseMix(o.get("mix"));
+        String[] types = o.get("types").split(",");
+
+        Workload w = Workload.discover(host, port, types);
+        System.out.printf("Carga: %d conexiones, %.0f cmd/s, %d s, %d productos conocidos%n",
+                conns, rate, seconds, w.ids.length);
+
+        long intervalNanos = (long) (1e9 * conns / rate); // cada conexion manda rate/conns por segundo
+        long start = System.nanoTime() + 200_000_000L;    // arranque comun
+        long end = start + seconds * 1_000_000_000L;
+        Worker[] workers = new Worker[conns];
+        CountDownLatch done = new CountDownLatch(conns);
+        for (int i = 0; i < conns; i++) {
+            // cada conexion empieza desfasada para repartir los envios dentro del intervalo
+            workers[i] = new Worker(host, port, w, weights, start + intervalNanos * i / conns, end, intervalNanos, done);
+            new Thread(workers[i], "load-" + i).start();
+        }
+        done.await();
+
+        LatencyHistogram[] hist = new LatencyHistogram[COMMANDS.length];
+        long[] errors = new long[COMMANDS.length];
+        long failedConns = 0;
+        for (int c = 0; c < COMMANDS.length; c++) hist[c] = new LatencyHistogram();
+        for (Worker wk : workers) {
+            if (wk.failure != null) failedConns++;
+            for (int c = 0; c < COMMANDS.length; c++) { hist[c].add(wk.hist[c]); errors[c] += wk.errors[c]; }
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%n%-9s %9s %9s %7s %9s %9s %9s %9s %9s%n",
+                "comando", "total", "cmd/s", "ERROR", "p50(us)", "p90", "p99", "p99.9", "max");
+        LatencyHistogram all = new LatencyHistogram();
+        for (int c = 0; c < COMMANDS.length; c++) {
+            all.add(hist[c]);
+            print(COMMANDS[c], hist[c], errors[c], secs);
+        }
+        print("todos", all, Arrays.stream(errors).sum(), secs);
+        if (failedConns > 0) System.out.println(failedConns + " conexiones fallaron (ver stderr)");
+    }
+
+    private static void print(String name, LatencyHistogram h, long errors, double secs) {
+        System.out.printf("%-9s %9d %9.0f %7d %9d %9d %9d %9d %9d%n", name, h.count(), h.count() / secs, errors,
+                h.percentile(0.50), h.percentile(0.90), h.percentile(0.99), h.percentile(0.999), h.maxMicros());
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] w = new int[COMMANDS.length];
+        for (String part : mix.split(",")) {
+            String[] kv = part.split(":");
+            int idx = Arrays.asList(COMMANDS).indexOf(kv[0].trim().toLowerCase(Locale.ROOT));
+            if (idx < 0) throw new IllegalArgumentException("Comando de mezcla desconocido: " + kv[0]);
+            w[idx] = Integer.parseInt(kv[1].trim());
+        }
+        for (int i = 1; i < w.length; i++) w[i] += w[i - 1]; // acumulados
+        if (w[w.length - 1] <= 0) throw new IllegalArgumentException("La mezcla no tiene pesos");
+        return w;
+    }
+
+    // ids, tipos y terminos de busqueda reales, obtenidos del servidor antes de la prueba
+    record Workload(int[] ids, String[] types, String[] terms) {
+        static Workload discover(String host, int port, String[] types) throws IOException {
+            List<Integer> ids = new ArrayList<>();
+            Set<String> terms = new LinkedHashSet<>();
+            List<String> found = new ArrayList<>();
+            try (Conn c = new Conn(host, port)) {
+                for (String t : types) {
+                    String resp = c.call("LIST " + t);
+                    if (!resp.startsWith("Ok")) continue;
+                    found.add(t);
+                    for (String line : resp.split("\n")) {
+                        if (!line.startsWith("#")) continue;
+                        String[] cols = line.split("\\|");
+                        ids.add(Integer.parseInt(cols[0].substring(1).trim()));
+                        terms.add(cols[2].trim().toLowerCase(Locale.ROOT)); // marca
+                    }
+                }
+            }
+            if (ids.isEmpty()) throw new IOException("El servidor no devolvio productos para " + Arrays.toString(types));
+            return new Workload(ids.stream().mapToInt(Integer::intValue).toArray(),
+                    found.toArray(new String[0]), terms.toArray(new String[0]));
+        }
+    }
+
+    // conexion con respuestas delimitadas (PROTO 2)
+    static final class Conn implements Closeable {
+        final Socket socket;
+        final BufferedReader in;
+        final Writer out;
+
+        Conn(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            in.readLine(); // saludo
+            if (!call("PROTO 2").equals("Ok PROTO 2")) throw new IOException("El servidor no soporta PROTO 2");
+        }
+
+        String call(String cmd) throws IOException {
+            out.write(cmd);
+            out.write('\n');
+            out.flush();
+            return read();
+        }
+
+        // lee hasta la linea "."; la respuesta a PROTO 2 ya viene delimitada
+        String read() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals(".")) return sb.toString();
+                if (line.startsWith("..")) line = line.substring(1);
+                if (sb.length() > 0) sb.append('\n');
+                sb.append(line);
+            }
+            throw new EOFException("El servidor cerro la conexion");
+        }
+
+        @Override
+        public void close() throws IOException { socket.close(); }
+    }
+
+    static final class Worker implements Runnable {
+        final String host; final int port; final Workload w; final int[] weights;
+        final long first, end, interval;
+        final CountDownLatch done;
+        final LatencyHistogram[] hist = new LatencyHistogram[COMMANDS.length];
+        final long[] errors = new long[COMMANDS.length];
+        volatile Exception failure;
+
+        Worker(String host, int port, Workload w, int[] weights, long first, long end, long interval, CountDownLatch done) {
+            this.host = host; this.port = port; this.w = w; this.weights = weights;
+            this.first = first; this.end = end; this.interval = interval; this.done = done;
+            for (int c = 0; c < COMMANDS.length; c++) hist[c] = new LatencyHistogram();
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            try (Conn c = new Conn(host, port)) {
+                for (long intended = first; intended < end; intended += interval) {
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait); // si vamos atrasados, se envia ya
+                    int pick = rnd.nextInt(weights[weights.length - 1]), cmd = 0;
+                    while (pick >= weights[cmd]) cmd++;
+                    String resp = c.call(command(cmd, rnd));
+                    hist[cmd].record(System.nanoTime() - intended); // desde el envio planeado
+                    if (resp.startsWith("ERROR")) errors[cmd]++;
+                }
+                c.call("QUIT");
+            } catch (Exception e) {
+                failure = e;
+                System.err.println(Thread.currentThread().getName() + ": " + e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private String command(int cmd, ThreadLocalRandom rnd) {
+            return switch (cmd) {
+                case 0 -> "SEARCH " + w.terms[rnd.nextInt(w.terms.length)];
+                case 1 -> "LIST " + w.types[rnd.nextInt(w.types.length)];
+                case 2 -> "ADD " + w.ids[rnd.nextInt(w.ids.length)] + " 1";
+                default -> "CHECKOUT";
+            };
+        }
+    }
+}
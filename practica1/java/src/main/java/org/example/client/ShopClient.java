@@ -2,63 +2,114 @@ package org.example.client;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class ShopClient {
     public static void main(String[] args) throws Exception {
-        String host = "127.0.0.1"; // direccion del servidor
-        int port = 5000;           // puerto del servidor
+        String host = args.length > 0 ? args[0] : "127.0.0.1"; // direccion del servidor
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5000; // puerto del servidor
 
-        // abre socket y streams (auto-flush en PrintWriter)
+        // abre socket y streams (sin auto-flush: los comandos en lote se envian juntos)
         try (Socket s = new Socket(host, port);
-             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream()), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
              Scanner sc = new Scanner(System.in)) {
 
             System.out.println(in.readLine()); // lee saludo inicial del servidor
 
+            // negocia PROTO 2: cada respuesta termina con una linea "." y ya no hay que adivinar con ready()
+            out.println("PROTO 2");
+            out.flush();
+            boolean framed = "Ok PROTO 2".equals(in.readLine());
+            if (framed) in.readLine(); // consume el "." que cierra la respuesta a PROTO
+
             boolean running = true; // bandera de sesion
             while (running) {
                 printMenu();                 // muestra menu local
                 System.out.print("> ");      // prompt
-                String cmd = sc.nextLine().trim(); // lee comando del usuario
-                if (cmd.isEmpty()) continue; // ignora vacios
-
-                out.println(cmd);            // envía comando al servidor
-                String first = in.readLine();// primera linea de respuesta
-                if (first == null) break;    // servidor cerro la conexion
+                if (!sc.hasNextLine()) break; // fin de la entrada estandar
+                String input = sc.nextLine().trim(); // lee comando(s) del usuario
+                if (input.isEmpty()) continue; // ignora vacios
 
-                // bloque especial para ticket: junta resto de lineas y guarda archivo
-                if (first.startsWith("OK TICKET")) {
-                    StringBuilder rest = new StringBuilder();
-                    String line;
-                    while (in.ready() && (line = in.readLine()) != null) rest.append(line).append('\n');
-                    String full = first + "\n" + rest.toString().trim();
-                    System.out.println(full); // imprime ticket completo en consola
+                // varios comandos separados por ';' se envian de una vez y luego se leen sus respuestas
+                List<String> cmds = new ArrayList<>();
+                for (String c : (framed ? input.split(";") : new String[]{input}))
+                    if (!c.isBlank()) cmds.add(c.trim());
+                for (String c : cmds) out.println(c); // envía comandos al servidor
+                out.flush();
 
-                    // nombre de archivo con timestamp y escritura a disco
-                    String fname = "ticket_" + LocalDateTime.now()
-                            .format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
-                    Files.writeString(Paths.get(fname), full);
-                    System.out.println("[CLIENTE] Ticket guardado: " + fname);
-                } else {
-                    // respuesta normal de una o varias lineas
-                    StringBuilder block = new StringBuilder(first);
-                    String line;
-                    while (in.ready() && (line = in.readLine()) != null) block.append('\n').append(line);
-                    System.out.println(block);
-
-                    // fin de sesion cuando el servidor responde BYE
-                    if ("BYE".equals(first))
-                        running = false;
+                for (int i = 0; i < cmds.size() && running; i++) {
+                    String resp;
+                    if (isProto(cmds.get(i))) {
+                        // el servidor contesta PROTO ya en el formato nuevo: se lee un renglon y se
+                        // sigue lo negociado (si no, tras PROTO 1 se esperaria un "." que no llega)
+                        resp = in.readLine();
+                        if ("Ok PROTO 1".equals(resp)) framed = false;
+                        else if ("Ok PROTO 2".equals(resp)) framed = true;
+                        if (resp != null && framed) in.readLine(); // "." que cierra la respuesta
+                    } else {
+                        resp = framed ? readFramed(in) : readLegacy(in);
+                    }
+                    if (resp == null) { running = false; break; } // servidor cerro la conexion
+                    running = show(resp);
                 }
             }
         }
     }
 
+    private static boolean isProto(String cmd) {
+        return cmd.split("\\s+")[0].equalsIgnoreCase("PROTO");
+    }
+
+    // lee una respuesta PROTO 2: lineas hasta "." (las que empiezan con ".." pierden un punto)
+    private static String readFramed(BufferedReader in) throws IOException {
+        StringBuilder block = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals(".")) return block.toString();
+            if (line.startsWith("..")) line = line.substring(1);
+            if (block.length() > 0) block.append('\n');
+            block.append(line);
+        }
+        return null;
+    }
+
+    // lee una respuesta PROTO 1: primera linea y lo que ya este disponible en el buffer
+    private static String readLegacy(BufferedReader in) throws IOException {
+        String first = in.readLine(); // primera linea de respuesta
+        if (first == null) return null;
+        StringBuilder block = new StringBuilder(first);
+        String line;
+        while (in.ready() && (line = in.readLine()) != null) block.append('\n').append(line);
+        return block.toString();
+    }
+
+    // muestra una respuesta; devuelve false si la sesion termino
+    private static boolean show(String resp) throws IOException {
+        // bloque especial para ticket: guarda archivo
+        if (resp.startsWith("Ok TICKET")) {
+            String full = resp.trim();
+            System.out.println(full); // imprime ticket completo en consola
+
+            // nombre de archivo con timestamp y escritura a disco
+            String fname = "ticket_" + LocalDateTime.now()
+                    .format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
+            Files.writeString(Paths.get(fname), full);
+            System.out.println("[CLIENTE] Ticket guardado: " + fname);
+            return true;
+        }
+        // respuesta normal de una o varias lineas
+        System.out.println(resp);
+        // fin de sesion cuando el servidor responde BYE
+        return !"BYE".equals(resp);
+    }
+
     // imprime el menu local de ayuda de comandos
     private static void printMenu(){
         System.out.println("""
@@ -72,7 +123,7 @@ public class ShopClient {
             7) CHECKOUT
             8) HELP
             9) QUIT
-            (Teclea el comando directamente)
+            (Teclea el comando directamente; separa varios con ';' para enviarlos juntos)
             """);
     }
 }
@@ -0,0 +1,206 @@
+package org.example.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class BinaryProtocol {
+    // protocolo binario para clientes automaticos; se activa si el primer byte del cliente es MAGIC
+    // peticion:  [opcode:1][argumentos varint...]
+    // respuesta: [status:1] + datos; status 0 = ok, 1 = error seguido de [codigo varint]
+    // precios en centavos (varint): 899.00 -> 89900
+    public static final byte MAGIC = (byte) 0xB1;
+
+    public static final byte OP_ADD = 0x01;      // id, cant
+    public static final byte OP_UPDATE = 0x02;   // id, cant (0 elimina)
+    public static final byte OP_REMOVE = 0x03;   // id
+    public static final byte OP_CART = 0x04;     // -> n, n*(id, cant, subtotal), total
+    public static final byte OP_CHECKOUT = 0x05; // -> n, total
+    public static final byte OP_GET = 0x06;      // id -> id, precio, stock
+    public static final byte OP_QUIT = 0x0F;
+
+    public static final byte STATUS_OK = 0, STATUS_ERROR = 1;
+    // codigos de error: los mismos resultados de ClientHandler, mas comando desconocido
+    public static final int ERR_UNKNOWN_OP = 100;
+
+    private final ClientHandler session; // carrito de la conexion
+    private byte[] buf = new byte[256];  // bytes recibidos aun sin procesar
+    private int len;
+    private boolean closed;              // QUIT recibido o comando invalido
+    private boolean deferBlocking;       // feed se detiene antes de un CHECKOUT (lo corre otro hilo)
+    private boolean blocked;             // hay un CHECKOUT al inicio de buf esperando runBlocking
+
+    public BinaryProtocol(ClientHandler session) {
+        this.session = session;
+    }
+
+    public boolean closed() { return closed; }
+
+    // modo NIO: un CHECKOUT puede esperar (fsync, lote del combinador, primario) y no debe
+    // correr en el hilo del Selector; feed lo deja pendiente y lo ejecuta runBlocking
+    void deferBlocking() { deferBlocking = true; }
+
+    boolean blocked() { return blocked; }
+
+    // ejecuta el CHECKOUT que detuvo a feed; despues se sigue con feed (aunque no lleguen bytes)
+    byte[] runBlocking() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int end = execute(0, out);
+        System.arraycopy(buf, end, buf, 0, len - end);
+        len -= end;
+        blocked = false;
+        return out.toByteArray();
+    }
+
+    // consume los bytes recibidos y devuelve las respuestas de todos los comandos completos
+    // un comando partido a la mitad se queda en el buffer hasta que llegue el resto
+    public byte[] feed(ByteBuffer src) {
+        int n = src.remaining();
+        if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+        src.get(buf, len, n);
+        len += n;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < len && !closed) {
+            if (deferBlocking && buf[pos] == OP_CHECKOUT) { blocked = true; break; }
+            int end = execute(pos, out);
+            if (end < 0) break; // comando incompleto
+            pos = end;
+        }
+        System.arraycopy(buf, pos, buf, 0, len - pos);
+        len -= pos;
+        return out.toByteArray();
+    }
+
+    // ejecuta el comando que empieza en pos; devuelve donde termina o -1 si falta informacion
+    private int execute(int pos, ByteArrayOutputStream out) {
+        byte op = buf[pos++];
+        long a = 0, b = 0;
+        int args = switch (op) {
+            case OP_ADD, OP_UPDATE -> 2;
+            case OP_REMOVE, OP_GET -> 1;
+            default -> 0;
+        };
+        if (args >= 1) { a = readVarint(pos); if (a < 0) return -1; pos = cursor; }
+        if (args >= 2) { b = readVarint(pos); if (b < 0) return -1; pos = cursor; }
+        int id = (int) a, qty = (int) b;
+        long t0 = System.nanoTime();
+        executeOp(op, id, qty, out);
+        ServerMetrics.global().command(metricOf(op), System.nanoTime() - t0);
+        return pos;
+    }
+
+    // indice de metrica (mismos que el protocolo de texto) de un opcode binario
+    private static int metricOf(byte op) {
+        return switch (op) {
+            case OP_ADD -> CommandLine.ADD;
+            case OP_UPDATE -> CommandLine.UPDATE;
+            case OP_REMOVE -> CommandLine.REMOVE;
+            case OP_CART -> CommandLine.CART;
+            case OP_CHECKOUT -> CommandLine.CHECKOUT;
+            case OP_GET -> ServerMetrics.GET;
+            case OP_QUIT -> CommandLine.QUIT;
+            default -> CommandLine.UNKNOWN;
+        };
+    }
+
+    private void executeOp(byte op, int id, int qty, ByteArrayOutputStream out) {
+        switch (op) {
+            case OP_ADD -> result(out, session.addToCart(id, qty));
+            case OP_UPDATE -> {
+                int r = session.updateCart(id, qty);
+                result(out, r == ClientHandler.REMOVED ? ClientHandler.OK : r);
+            }
+            case OP_REMOVE -> result(out, session.removeFromCart(id) ? ClientHandler.OK : ClientHandler.NOT_IN_CART);
+            case OP_CART -> {
+                out.write(STATUS_OK);
+                IntIntMap cart = session.cart();
+                writeVarint(out, cart.size());
+                writeVarint(out, writeItems(out, cart));
+            }
+            case OP_CHECKOUT -> {
+                if (session.cart().isEmpty()) { result(out, ClientHandler.EMPTY_CART); break; }
+                IntIntMap bought;
+                try { bought = session.checkout(); }
+                catch (StockJournal.Unavailable e) { result(out, ClientHandler.NOT_SAVED); break; }
+                if (bought == null) { result(out, ClientHandler.STOCK_CHANGED); break; }
+                out.write(STATUS_OK);
+                writeVarint(out, bought.size());
+                writeVarint(out, totalCents(bought));
+            }
+            case OP_GET -> {
+                Product p = session.catalog().get(id);
+                if (p == null) { result(out, ClientHandler.NO_PRODUCT); break; }
+                out.write(STATUS_OK);
+                writeVarint(out, p.id);
+                writeVarint(out, cents(p.price));
+                writeVarint(out, p.stock);
+            }
+            case OP_QUIT -> { out.write(STATUS_OK); closed = true; }
+            default -> { result(out, ERR_UNKNOWN_OP); closed = true; } // no hay forma de resincronizar
+        }
+    }
+
+    private static void result(ByteArrayOutputStream out, int r) {
+        if (r == ClientHandler.OK) { out.write(STATUS_OK); return; }
+        out.write(STATUS_ERROR);
+        writeVarint(out, r);
+    }
+
+    // escribe cada renglon del carrito y devuelve el total en centavos
+    private long writeItems(ByteArrayOutputStream out, IntIntMap cart) {
+        long total = 0;
+        for (int i = 0; i < cart.size(); i++) {
+            Product p = session.catalog().get(cart.keyAt(i));
+            long sub = p == null ? 0 : cents(p.price) * cart.valueAt(i); // 0: retirado por una recarga
+            total += sub;
+            writeVarint(out, cart.keyAt(i));
+            writeVarint(out, cart.valueAt(i));
+            writeVarint(out, sub);
+        }
+        return total;
+    }
+
+    private long totalCents(IntIntMap items) {
+        long total = 0;
+        for (int i = 0; i < items.size(); i++) {
+            Product p = session.catalog().get(items.keyAt(i));
+            if (p != null) total += cents(p.price) * items.valueAt(i); // retirado por una recarga: no suma
+        }
+        return total;
+    }
+
+    static long cents(double price) {
+        return Math.round(price * 100);
+    }
+
+    private int cursor; // posicion tras el ultimo varint leido
+
+    // lee un varint sin signo (7 bits por byte); -1 si todavia no llega completo
+    // ids y cantidades son int: un varint de mas de 5 bytes o mayor que Integer.MAX_VALUE es
+    // malformado y cierra la conexion (no se trunca ni se espera a bytes que no vendran)
+    private long readVarint(int pos) {
+        long v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos >= len) return -1;
+            byte x = buf[pos++];
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0) {
+                if (v > Integer.MAX_VALUE) break;
+                cursor = pos;
+                return v;
+            }
+        }
+        closed = true; // varint malformado
+        return -1;
+    }
+
+    public static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
@@ -1,32 +1,178 @@
 package org.example.server;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
 
 public class Catalog {
-    // almacena productos en memoria e indexa por id
-    private final Map<Integer, Product> productsById = new HashMap<>();
+    // contenido del catalogo: productos + indices; una recarga arma uno nuevo aparte y lo publica de golpe
+    // las lecturas toman la referencia una vez y nunca esperan a una recarga
+    private static final class Snapshot {
+        // almacena productos en memoria e indexa por id (lecturas concurrentes sin candado, sin cajas Integer)
+        final ProductTable productsById = new ProductTable();
+        // indice invertido de n-gramas de nombre/marca para SEARCH
+        final SearchIndex searchIndex = new SearchIndex();
+        // trie de prefijos de nombre/marca para SUGGEST
+        final SuggestIndex suggestIndex = new SuggestIndex();
+        // particiones por tipo: listas inmutables ordenadas por id; se reemplaza el mapa completo al cambiar
+        volatile Map<String, List<Product>> byType = Map.of();
+        // todos los ids ordenados (SEARCH sin termino); se arma al primer uso y add() lo invalida
+        volatile int[] sortedIds;
+
+        int[] sortedIds() {
+            int[] ids = sortedIds;
+            if (ids == null) {
+                List<Product> all = productsById.values();
+                ids = new int[all.size()];
+                for (int i = 0; i < ids.length; i++) ids[i] = all.get(i).id;
+                Arrays.sort(ids);
+                sortedIds = ids;
+            }
+            return ids;
+        }
+    }
+
+    private volatile Snapshot snap = new Snapshot();
+    // ids que le tocan a este proceso (null = todos); en modo shard las recargas tambien se filtran
+    private volatile IntPredicate owns;
+    // sube cada vez que cambia el conjunto de productos (add, recarga): invalida respuestas en cache
+    private volatile int generation;
+
+    // resultado de una recarga: productos que conservaron su stock, nuevos y retirados
+    public record ReloadStats(int products, int kept, int added, int removed) {}
+
+    // candados por franja para las compras (64 franjas -> caben en un long como mascara)
+    private static final int STRIPES = 64;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+    }
+
+    // bitacora de compras (null = sin persistencia)
+    private volatile StockJournal journal;
+    // apartados con vencimiento (null = ADD no aparta stock)
+    private volatile Reservations reservations;
+    // compras en dos fases con vencimiento (null = no es shard: PREPARE/COMMIT/ABORT no existen)
+    private volatile PreparedPurchases preparedPurchases;
+    // combinador de compras (null = cada compra toma sus propios candados)
+    private volatile CheckoutCombiner combiner;
+    // primario: cambios que se envian a las replicas (null = sin replicas)
+    private volatile ReplicationFeed feed;
+    private final SalesAnalytics sales = new SalesAnalytics(); // mas vendidos e ingresos por tipo
+    // replica: conexion al primario (null = este proceso es el primario)
+    private volatile ReplicaClient replica;
 
     // crea un catalogo a partir de un JSON (lista de productos)
     public static Catalog fromJson(InputStream in) throws Exception {
-        ObjectMapper mapper = new ObjectMapper(); // parser JSON
-        List<Product> items = mapper.readValue(in, new TypeReference<List<Product>>() {}); // lee lista
+        return fromJson(in, Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    // lee el JSON producto por producto (sin armar la lista completa en memoria)
+    // parallel: construye el indice de busqueda y las particiones por tipo a la vez
+    public static Catalog fromJson(InputStream in, boolean parallel) throws Exception {
         Catalog c = new Catalog(); // nuevo catalogo vacio
-        for (Product p : items) {
-            if (p == null) continue; // ignora entradas nulas
-            // valida campos requeridos minimos
-            if (p.name == null || p.brand == null || p.type == null)
-                throw new IllegalArgumentException("Producto invalido en JSON (faltan campos requeridos)");
-            p.type = p.type.toUpperCase(Locale.ROOT); // normaliza tipo a mayusculas
-            // detecta ids duplicados
-            if (c.productsById.putIfAbsent(p.id, p) != null)
-                throw new IllegalArgumentException("ID de producto duplicado en JSON: " + p.id);
-        }
+        c.snap = readSnapshot(in, parallel, null);
         return c; // devuelve el catalogo cargado
     }
 
+    // arma un contenido completo (productos, indice y particiones) sin tocar el publicado
+    // owns != null: descarta al leer los productos de otros shards
+    private static Snapshot readSnapshot(InputStream in, boolean parallel, IntPredicate owns) throws Exception {
+        ObjectMapper mapper = new ObjectMapper(); // parser JSON
+        Snapshot c = new Snapshot();
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IllegalArgumentException("El JSON debe ser una lista de productos");
+            JsonToken tok;
+            while ((tok = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (tok == null)
+                    throw new IllegalArgumentException("JSON incompleto");
+                if (tok == JsonToken.VALUE_NULL) continue; // ignora entradas nulas
+                Product p = mapper.readValue(parser, Product.class); // lee solo este objeto
+                // valida campos requeridos minimos
+                if (p.name == null || p.brand == null || p.type == null)
+                    throw new IllegalArgumentException("Producto invalido en JSON (faltan campos requeridos)");
+                p.type = p.type.toUpperCase(Locale.ROOT); // normaliza tipo a mayusculas
+                if (owns != null && !owns.test(p.id)) continue; // lo atiende otro shard
+                // detecta ids duplicados
+                if (c.productsById.putIfAbsent(p) != null)
+                    throw new IllegalArgumentException("ID de producto duplicado en JSON: " + p.id);
+            }
+        }
+        List<Product> values = c.productsById.values();
+        // el trie de SUGGEST se arma en otro hilo mientras se arma el indice de SEARCH
+        var suggest = parallel ? java.util.concurrent.CompletableFuture.runAsync(() -> c.suggestIndex.rebuild(values)) : null;
+        c.searchIndex.rebuild(values, parallel); // indexa todo de una vez
+        if (suggest != null) suggest.join(); else c.suggestIndex.rebuild(values);
+        rebuildTypes(c);
+        return c;
+    }
+
+    // recarga el catalogo desde un JSON nuevo (copy-on-write)
+    // el parseo y los indices se arman fuera de todo candado; SEARCH/LIST siguen con el contenido
+    // anterior hasta que se publica el nuevo. Los ids que siguen existiendo conservan su stock y
+    // lo apartado (el stock del archivo solo aplica a productos nuevos); los retirados desaparecen
+    public ReloadStats reload(InputStream in) throws Exception {
+        return publish(readSnapshot(in, Runtime.getRuntime().availableProcessors() > 1, owns), true);
+    }
+
+    // replica: reemplaza todo el contenido por el que mando el primario (con su stock tal cual)
+    public void replaceAll(InputStream in) throws Exception {
+        publish(readSnapshot(in, Runtime.getRuntime().availableProcessors() > 1, owns), false);
+    }
+
+    // publica un contenido nuevo; keepStock: los ids que siguen conservan su stock y lo apartado
+    private synchronized ReloadStats publish(Snapshot next, boolean keepStock) { // excluye add() y otra recarga
+        int kept = 0;
+        lockAll(); // compras y apartados esperan solo mientras se copian los contadores
+        try {
+            Snapshot prev = snap;
+            for (Product p : next.productsById.values()) {
+                Product old = prev.productsById.get(p.id);
+                if (old == null) continue;
+                if (keepStock) {
+                    p.stock = old.stock;
+                    p.held = old.held;
+                }
+                kept++;
+            }
+            snap = next; // publicacion atomica
+            generation++;
+            ReplicationFeed f = feed;
+            if (f != null) f.resync(); // las replicas reciben el catalogo completo otra vez
+            int removed = prev.productsById.size() - kept;
+            return new ReloadStats(next.productsById.size(), kept, next.productsById.size() - kept, removed);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // shard al que pertenece un id cuando el catalogo se reparte entre 'shards' procesos
+    // (lo usan tanto los shards como el router: deben coincidir)
+    public static int shardOf(int id, int shards){
+        return Math.floorMod(IntIntMap.mix(id), shards);
+    }
+
+    // se queda solo con los productos del shard 'index' de 'shards' (y filtra igual las recargas)
+    public synchronized void restrictToShard(int index, int shards){
+        IntPredicate mine = id -> shardOf(id, shards) == index;
+        Snapshot next = new Snapshot();
+        for (Product p : snap.productsById.values())
+            if (mine.test(p.id)) next.productsById.put(p);
+        next.searchIndex.rebuild(next.productsById.values(), Runtime.getRuntime().availableProcessors() > 1);
+        next.suggestIndex.rebuild(next.productsById.values());
+        rebuildTypes(next);
+        owns = mine;
+        snap = next;
+        generation++;
+        ReplicationFeed f = feed;
+        if (f != null) f.resync();
+    }
+
     // catalogo de ejemplo cuando no hay JSON
     public static Catalog sample() {
         Catalog c = new Catalog();
@@ -37,45 +183,492 @@ public class Catalog {
         return c;
     }
 
-    // agrega o reemplaza un producto por id
-    public void add(Product p){ productsById.put(p.id, p); }
+    // agrega o reemplaza un producto por id y actualiza el indice
+    // (edicion puntual sobre el contenido publicado; las recargas completas usan reload)
+    // cada indice cambia en una sola escritura: SEARCH/SUGGEST/LIST ven el producto viejo o el nuevo
+    public synchronized void add(Product p){
+        Snapshot s = snap;
+        Product old = s.productsById.put(p);
+        if (old == null) s.sortedIds = null; // id nuevo
+        s.searchIndex.replace(old, p);
+        s.suggestIndex.replace(old, p);
+        ReplicationFeed f = feed;
+        if (f != null) f.productChanged(p.id);
+        // solo se tocan las particiones del tipo viejo y del nuevo (sin recorrer el catalogo)
+        Map<String, List<Product>> next = new HashMap<>(s.byType);
+        if (old != null) next.computeIfPresent(old.type, (t, list) -> without(list, old.id));
+        next.put(p.type, with(next.getOrDefault(p.type, List.of()), p));
+        next.values().removeIf(List::isEmpty);
+        s.byType = Map.copyOf(next);
+        generation++; // al final: una respuesta en cache no puede quedar con la version nueva y datos viejos
+    }
+
+    // arma las particiones de todos los tipos en una sola pasada
+    private static void rebuildTypes(Snapshot s){
+        Map<String, List<Product>> next = new HashMap<>();
+        for (Product p : s.productsById.values())
+            next.computeIfAbsent(p.type, k -> new ArrayList<>()).add(p);
+        next.replaceAll((k, list) -> sortedCopy(list));
+        s.byType = Map.copyOf(next);
+    }
+
+    // copia de una particion (ordenada por id) con p insertado en su lugar o reemplazando su id
+    private static List<Product> with(List<Product> list, Product p){
+        List<Product> out = new ArrayList<>(list);
+        int i = indexOf(list, p.id);
+        if (i >= 0) out.set(i, p); else out.add(-i - 1, p);
+        return List.copyOf(out);
+    }
+
+    // copia de una particion sin el id
+    private static List<Product> without(List<Product> list, int id){
+        int i = indexOf(list, id);
+        if (i < 0) return list;
+        List<Product> out = new ArrayList<>(list);
+        out.remove(i);
+        return List.copyOf(out);
+    }
+
+    // busqueda binaria por id en una particion (como Arrays.binarySearch: -(insercion)-1 si no esta)
+    private static int indexOf(List<Product> list, int id){
+        int lo = 0, hi = list.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1, m = list.get(mid).id;
+            if (m < id) lo = mid + 1; else if (m > id) hi = mid - 1; else return mid;
+        }
+        return -lo - 1;
+    }
+
+    private static List<Product> sortedCopy(List<Product> list){
+        list.sort(Comparator.comparingInt(pp -> pp.id));
+        return List.copyOf(list);
+    }
+
+    // version del conjunto de productos (no cambia con el stock: eso lo dice Product.version)
+    public int generation(){ return generation; }
+
+    // numero de productos
+    public int size(){ return snap.productsById.size(); }
 
     // obtiene un producto por id, o null si no existe
-    public Product get(int id){ return productsById.get(id); }
+    public Product get(int id){ return snap.productsById.get(id); }
 
     // busca por nombre o marca (case-insensitive) y ordena por id
+    // resuelve con el indice de n-gramas; solo verifica candidatos si el termino es largo
     public List<Product> search(String term){
-        String t = term.toLowerCase(Locale.ROOT); // normaliza termino
-        List<Product> out = new ArrayList<>();
-        for (Product p : productsById.values())
-            if (p.name.toLowerCase().contains(t) || p.brand.toLowerCase().contains(t))
-                out.add(p);
-        out.sort(Comparator.comparingInt(pp -> pp.id)); // orden estable por id
+        return search(term, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // una pagina de SEARCH: hasta 'max' resultados con id > afterId, en orden de id
+    // (para saber si hay otra pagina se pide uno de mas); no guarda nada entre llamadas
+    public List<Product> search(String term, int afterId, int max){
+        Snapshot s = snap; // todo el SEARCH sobre el mismo contenido aunque haya una recarga
+        ProductTable productsById = s.productsById;
+        String t = SearchIndex.norm(term); // normaliza termino
+        int[] ids = s.searchIndex.candidates(t);
+        boolean verify = t.length() > SearchIndex.GRAM; // los trigramas pueden dar falsos positivos
+        if (ids == null) { // termino vacio: coincide con todo
+            ids = s.sortedIds();
+            verify = false;
+        }
+        List<Product> out = new ArrayList<>(Math.min(ids.length, max));
+        // las listas ya vienen ordenadas por id: se salta directo a la posicion del cursor
+        for (int i = firstAfter(ids, afterId); i < ids.length && out.size() < max; i++) {
+            Product p = productsById.get(ids[i]);
+            if (p == null) continue;
+            if (verify && !SearchIndex.norm(p.name).contains(t) && !SearchIndex.norm(p.brand).contains(t))
+                continue;
+            out.add(p);
+        }
         return out;
     }
 
-    // lista productos por tipo (case-insensitive) y ordena por id
+    // primera posicion con id > afterId en un arreglo ordenado
+    private static int firstAfter(int[] ids, int afterId){
+        if (afterId == Integer.MIN_VALUE) return 0;
+        int i = Arrays.binarySearch(ids, afterId);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    // autocompletado: hasta n productos con una palabra del nombre o la marca que empieza con 'prefix'
+    // (orden alfabetico por nombre); cuesta lo que mide el prefijo, no lo que mide el catalogo
+    public List<Product> suggest(String prefix, int n){
+        return snap.suggestIndex.suggest(prefix, n);
+    }
+
+    // lista productos por tipo (case-insensitive), ya ordenados por id
+    // devuelve la particion precalculada: inmutable, no se copia ni se ordena por llamada
     public List<Product> listByType(String type){
-        String wanted = type.toUpperCase(Locale.ROOT); // normaliza tipo
-        List<Product> out = new ArrayList<>();
-        for (Product p : productsById.values())
-            if (p.type.equals(wanted))
-                out.add(p);
-        out.sort(Comparator.comparingInt(pp -> pp.id));
-        return out;
+        return snap.byType.getOrDefault(type.toUpperCase(Locale.ROOT), List.of());
     }
 
-    // intenta comprar: valida stock y descuenta si todo es valido
-    public boolean tryPurchase(Map<Integer,Integer> req){
-        // primera pasada: validar disponibilidad
-        for (var e : req.entrySet()) {
-            Product p = productsById.get(e.getKey());
-            int qty = e.getValue();
-            if (p == null || qty <= 0 || p.stock < qty) return false; // falla si no alcanza
-        }
-        // segunda pasada: descontar existencias
-        for (var e : req.entrySet())
-            productsById.get(e.getKey()).stock -= e.getValue();
+    // una pagina de LIST: vista de la particion desde el primer id > afterId (sin copiar)
+    public List<Product> listByType(String type, int afterId, int max){
+        List<Product> all = listByType(type);
+        int lo = 0, hi = all.size(); // busqueda binaria por id
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (all.get(mid).id <= afterId) lo = mid + 1; else hi = mid;
+        }
+        return all.subList(lo, (int) Math.min(all.size(), (long) lo + max));
+    }
+
+    // intenta comprar: valida stock y descuenta si todo es valido (todo o nada)
+    // cada producto cae en una franja de candado; solo se bloquean las franjas del carrito,
+    // asi dos carritos sin productos en comun confirman en paralelo
+    public boolean tryPurchase(IntIntMap req){
+        CheckoutCombiner c = combiner;
+        if (c != null) return c.submit(req, null); // se aplica en lote junto con las compras concurrentes
+        long mask = 0L; // franjas que toca este carrito (una por bit)
+        for (int i = 0; i < req.size(); i++) {
+            if (get(req.keyAt(i)) == null || req.valueAt(i) <= 0) return false; // producto inexistente o cantidad invalida
+            mask |= 1L << stripeOf(req.keyAt(i));
+        }
+        StockJournal j = journal;
+        long seq = 0;
+        lockStripes(mask);
+        try {
+            // con una franja tomada no puede publicarse una recarga: se resuelve de nuevo por id
+            ProductTable productsById = snap.productsById;
+            // primera pasada: validar disponibilidad
+            for (int i = 0; i < req.size(); i++) {
+                Product p = productsById.get(req.keyAt(i));
+                if (p == null || p.stock < req.valueAt(i)) return false; // falla si no alcanza (o lo retiro una recarga)
+            }
+            // se registra dentro de los candados (mismo orden que en memoria) y antes de descontar:
+            // si la bitacora esta detenida lanza StockJournal.Unavailable sin haber tocado el stock
+            if (j != null) seq = j.append(req);
+            // segunda pasada: descontar existencias
+            for (int i = 0; i < req.size(); i++)
+                productsById.get(req.keyAt(i)).adjustStock(-req.valueAt(i));
+        } finally {
+            unlockStripes(mask);
+        }
+        if (j != null) awaitDurable(j, seq, req); // fuera de los candados: el fsync se comparte con otras compras
+        changed(req);
+        sales.sold(this, req);
         return true; // exito
     }
+
+    // variante con mapa de cajas (id -> cantidad) para quien ya tiene un Map
+    public boolean tryPurchase(Map<Integer,Integer> req){
+        IntIntMap m = new IntIntMap(req.size());
+        for (var e : req.entrySet()) m.put(e.getKey(), e.getValue());
+        return tryPurchase(m);
+    }
+
+    // aplica reqs[0..n) bajo una sola toma de candados (la union de sus franjas)
+    // cada compra se valida por separado: results[i] dice si la i-esima se acepto
+    // holds[k] (o null) son los apartados de la sesion de reqs[k], igual que en purchaseHeld
+    // primero se validan todas (contando lo que toman las anteriores del lote), luego se registran
+    // juntas en la bitacora y solo al final se descuenta: si la bitacora falla no queda nada a medias.
+    // devuelve false si la bitacora no pudo guardar el lote: las aceptadas no se hicieron
+    boolean applyBatch(IntIntMap[] reqs, Map<Integer, Reservations.Hold>[] holds, int n, boolean[] results){
+        long mask = 0L;
+        for (int k = 0; k < n; k++) {
+            results[k] = true;
+            for (int i = 0; i < reqs[k].size(); i++) {
+                if (get(reqs[k].keyAt(i)) == null || reqs[k].valueAt(i) <= 0) { results[k] = false; break; }
+                mask |= 1L << stripeOf(reqs[k].keyAt(i));
+            }
+        }
+        StockJournal j = journal;
+        long seq = 0;
+        int accepted = 0;
+        lockStripes(mask);
+        try {
+            ProductTable productsById = snap.productsById;
+            IntIntMap taken = new IntIntMap(); // id -> unidades que ya toman las compras aceptadas del lote
+            for (int k = 0; k < n; k++) {
+                if (!results[k]) continue;
+                IntIntMap req = reqs[k];
+                Map<Integer, Reservations.Hold> h = holds[k];
+                for (int i = 0; i < req.size() && results[k]; i++) {
+                    Product p = productsById.get(req.keyAt(i));
+                    int need = req.valueAt(i) - held(h, req.keyAt(i));
+                    if (p == null || need > 0 && p.stock - taken.get(req.keyAt(i), 0) < need) results[k] = false;
+                }
+                if (!results[k]) continue;
+                for (int i = 0; i < req.size(); i++) taken.merge(req.keyAt(i), req.valueAt(i) - held(h, req.keyAt(i)));
+                accepted++;
+            }
+            if (accepted == 0) return true;
+            if (j != null) {
+                try { seq = j.append(reqs, results, n); }
+                catch (StockJournal.Unavailable e) { return false; } // nada se desconto
+            }
+            for (int k = 0; k < n; k++) {
+                if (!results[k]) continue;
+                IntIntMap req = reqs[k];
+                Map<Integer, Reservations.Hold> h = holds[k];
+                for (int i = 0; i < req.size(); i++) {
+                    Product p = productsById.get(req.keyAt(i));
+                    int have = held(h, req.keyAt(i));
+                    p.adjustStock(have - req.valueAt(i));
+                    if (have > 0) { p.held -= have; h.get(req.keyAt(i)).qty = 0; } // el apartado se vuelve venta
+                }
+            }
+        } finally {
+            unlockStripes(mask);
+        }
+        if (j != null) { // un solo fsync cubre todo el lote
+            try {
+                j.awaitDurable(seq);
+            } catch (StockJournal.Unavailable e) {
+                for (int k = 0; k < n; k++) if (results[k]) restock(reqs[k]);
+                return false;
+            }
+        }
+        for (int k = 0; k < n; k++) if (results[k]) { changed(reqs[k]); sales.sold(this, reqs[k]); }
+        return true;
+    }
+
+    // espera el fsync de una compra ya descontada; si no llega (la bitacora fallo) la compra no se
+    // confirma al cliente, asi que tampoco queda hecha en memoria: sus unidades regresan a stock
+    // (las que venian de un apartado tambien: ese apartado ya se consumio) y se relanza Unavailable
+    private void awaitDurable(StockJournal j, long seq, IntIntMap req){
+        try {
+            j.awaitDurable(seq);
+        } catch (StockJournal.Unavailable e) {
+            restock(req);
+            throw e;
+        }
+    }
+
+    private void restock(IntIntMap req){
+        long mask = 0L;
+        for (int i = 0; i < req.size(); i++) mask |= 1L << stripeOf(req.keyAt(i));
+        lockStripes(mask);
+        try {
+            for (int i = 0; i < req.size(); i++) {
+                Product p = get(req.keyAt(i));
+                if (p != null) p.adjustStock(req.valueAt(i));
+            }
+        } finally {
+            unlockStripes(mask);
+        }
+    }
+
+    // unidades que la sesion tiene apartadas de un producto (0 sin apartados)
+    private static int held(Map<Integer, Reservations.Hold> holds, int id){
+        if (holds == null) return 0;
+        Reservations.Hold h = holds.get(id);
+        return h == null ? 0 : h.qty;
+    }
+
+    // activa el combinador de compras (lotes de hasta maxBatch carritos)
+    public void enableCombiner(int maxBatch){ combiner = new CheckoutCombiner(this, maxBatch); }
+
+    public CheckoutCombiner combiner(){ return combiner; }
+
+    // compra un carrito cuyos productos pueden tener unidades apartadas por la sesion
+    // lo apartado ya salio de stock; solo se valida y descuenta lo que falte (p.ej. si un apartado vencio)
+    public boolean purchaseHeld(IntIntMap req, Map<Integer, Reservations.Hold> holds){
+        CheckoutCombiner c = combiner;
+        if (c != null) return c.submit(req, holds); // el combinador tambien consume apartados
+        long mask = 0L;
+        for (int i = 0; i < req.size(); i++) {
+            if (get(req.keyAt(i)) == null || req.valueAt(i) <= 0) return false;
+            mask |= 1L << stripeOf(req.keyAt(i));
+        }
+        StockJournal j = journal;
+        long seq = 0;
+        lockStripes(mask);
+        try {
+            ProductTable productsById = snap.productsById;
+            for (int i = 0; i < req.size(); i++) {
+                Product p = productsById.get(req.keyAt(i));
+                Reservations.Hold h = holds.get(req.keyAt(i));
+                int need = req.valueAt(i) - (h == null ? 0 : h.qty);
+                if (p == null || need > 0 && p.stock < need) return false;
+            }
+            if (j != null) seq = j.append(req);
+            for (int i = 0; i < req.size(); i++) {
+                Product p = productsById.get(req.keyAt(i));
+                Reservations.Hold h = holds.get(req.keyAt(i));
+                int have = h == null ? 0 : h.qty;
+                p.adjustStock(have - req.valueAt(i)); // lo que falte sale de stock (o sobra y regresa)
+                if (have > 0) { p.held -= have; h.qty = 0; } // el apartado se convierte en venta
+            }
+        } finally {
+            unlockStripes(mask);
+        }
+        if (j != null) awaitDurable(j, seq, req);
+        changed(req);
+        sales.sold(this, req);
+        return true;
+    }
+
+    // compra en dos fases (carritos repartidos entre shards): PREPARE separa todo el carrito
+    // (lo que ya estaba apartado por la sesion se reutiliza) y COMMIT/ABORT lo vende o lo devuelve.
+    // entre una fase y otra las unidades cuentan como apartadas: nadie mas puede venderlas
+    public boolean prepare(IntIntMap req, Map<Integer, Reservations.Hold> holds){
+        long mask = 0L;
+        for (int i = 0; i < req.size(); i++) {
+            if (get(req.keyAt(i)) == null || req.valueAt(i) <= 0) return false;
+            mask |= 1L << stripeOf(req.keyAt(i));
+        }
+        lockStripes(mask);
+        try {
+            ProductTable productsById = snap.productsById;
+            for (int i = 0; i < req.size(); i++) {
+                Product p = productsById.get(req.keyAt(i));
+                Reservations.Hold h = holds.get(req.keyAt(i));
+                int need = req.valueAt(i) - (h == null ? 0 : h.qty);
+                if (p == null || need > 0 && p.stock < need) return false;
+            }
+            for (int i = 0; i < req.size(); i++) {
+                Product p = productsById.get(req.keyAt(i));
+                Reservations.Hold h = holds.get(req.keyAt(i));
+                int have = h == null ? 0 : h.qty;
+                p.adjustHeld(req.valueAt(i) - have); // el apartado de la sesion pasa a ser de la compra
+                if (h != null) h.qty = 0;
+            }
+        } finally {
+            unlockStripes(mask);
+        }
+        changed(req);
+        return true;
+    }
+
+    // confirma una compra preparada: lo apartado se vuelve venta y se registra en la bitacora
+    // si la bitacora no puede guardarla, queda como un ABORT (lo preparado regresa a stock)
+    public void commitPrepared(IntIntMap req){
+        long mask = 0L;
+        for (int i = 0; i < req.size(); i++) mask |= 1L << stripeOf(req.keyAt(i));
+        StockJournal j = journal;
+        long seq = 0;
+        lockStripes(mask);
+        try {
+            if (j != null) seq = j.append(req);
+            for (int i = 0; i < req.size(); i++) {
+                Product p = get(req.keyAt(i));
+                if (p != null) p.held -= req.valueAt(i); // el stock ya se desconto al preparar
+            }
+        } catch (StockJournal.Unavailable e) {
+            for (int i = 0; i < req.size(); i++) {
+                Product p = get(req.keyAt(i));
+                if (p != null) p.adjustHeld(-req.valueAt(i));
+            }
+            throw e;
+        } finally {
+            unlockStripes(mask);
+        }
+        if (j != null) awaitDurable(j, seq, req);
+        sales.sold(this, req);
+    }
+
+    // cancela una compra preparada: lo apartado regresa a stock
+    public void abortPrepared(IntIntMap req){
+        long mask = 0L;
+        for (int i = 0; i < req.size(); i++) mask |= 1L << stripeOf(req.keyAt(i));
+        lockStripes(mask);
+        try {
+            for (int i = 0; i < req.size(); i++) {
+                Product p = get(req.keyAt(i));
+                if (p != null) p.adjustHeld(-req.valueAt(i));
+            }
+        } finally {
+            unlockStripes(mask);
+        }
+        changed(req);
+    }
+
+    // activa los apartados con vencimiento
+    public void enableReservations(long ttlMillis){ reservations = new Reservations(this, ttlMillis); }
+
+    Reservations reservations(){ return reservations; }
+
+    // activa PREPARE/COMMIT/ABORT (modo shard); lo preparado se cancela si pasa ttlMillis sin COMMIT
+    public void enablePreparedPurchases(long ttlMillis){ preparedPurchases = new PreparedPurchases(this, ttlMillis); }
+
+    PreparedPurchases preparedPurchases(){ return preparedPurchases; }
+
+    // mueve unidades entre stock y un apartado; false si no hay stock para apartar
+    // el producto se resuelve por id bajo el candado: tras una recarga es el objeto nuevo
+    boolean reserve(Reservations.Hold h, int delta){
+        ReentrantLock l = stripes[stripeOf(h.id)];
+        l.lock();
+        try {
+            Product p = get(h.id);
+            if (p == null) { h.qty = 0; return false; } // retirado por una recarga
+            if (delta > 0 && p.stock < delta) return false;
+            if (delta < 0) delta = Math.max(delta, -h.qty);
+            p.adjustHeld(delta);
+            h.qty += delta;
+        } finally {
+            l.unlock();
+        }
+        if (delta != 0) changed(h.id);
+        return true;
+    }
+
+    // regresa a stock todo lo apartado (vencimiento, REMOVE o fin de sesion)
+    void releaseHold(Reservations.Hold h){
+        ReentrantLock l = stripes[stripeOf(h.id)];
+        l.lock();
+        try {
+            Product p = get(h.id);
+            if (h.qty > 0 && p != null) p.adjustHeld(-h.qty);
+            h.qty = 0;
+        } finally {
+            l.unlock();
+        }
+        changed(h.id);
+    }
+
+    // replicacion: el primario marca los ids cuyo stock cambio (las replicas reciben el valor actual)
+    void attachFeed(ReplicationFeed f){ feed = f; }
+
+    ReplicationFeed feed(){ return feed; }
+
+    void attachReplica(ReplicaClient r){ replica = r; }
+
+    ReplicaClient replica(){ return replica; }
+
+    // ventas confirmadas en este proceso (TOP y STATS)
+    public SalesAnalytics sales(){ return sales; }
+
+    private void changed(IntIntMap req){
+        ReplicationFeed f = feed;
+        if (f != null) for (int i = 0; i < req.size(); i++) f.stockChanged(req.keyAt(i));
+    }
+
+    private void changed(int id){
+        ReplicationFeed f = feed;
+        if (f != null) f.stockChanged(id);
+    }
+
+    // engancha la bitacora que registrara las compras
+    void attachJournal(StockJournal j){ journal = j; }
+
+    // toma / suelta todas las franjas (fotos consistentes del stock)
+    void lockAll(){ lockStripes(-1L); }
+    void unlockAll(){ unlockStripes(-1L); }
+
+    // copia {ids, stock} de todos los productos; llamar con lockAll tomado
+    // lo apartado cuenta como existencia: los apartados no sobreviven a un reinicio
+    int[][] stockCopy(){
+        List<Product> all = snap.productsById.values();
+        int[] ids = new int[all.size()], stock = new int[all.size()];
+        for (int i = 0; i < ids.length; i++) { ids[i] = all.get(i).id; stock[i] = all.get(i).stock + all.get(i).held; }
+        return new int[][]{ids, stock};
+    }
+
+    // franja de candado de un id (mezcla bits para repartir ids consecutivos)
+    static int stripeOf(int id){
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    // toma las franjas en orden ascendente: un orden global unico evita interbloqueos
+    private void lockStripes(long mask){
+        for (long m = mask; m != 0; m &= m - 1)
+            stripes[Long.numberOfTrailingZeros(m)].lock();
+    }
+
+    private void unlockStripes(long mask){
+        for (long m = mask; m != 0; m &= m - 1)
+            stripes[Long.numberOfTrailingZeros(m)].unlock();
+    }
 }
@@ -0,0 +1,44 @@
+package org.example.server;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class CatalogReloader implements Runnable {
+    // vigila el JSON de productos y recarga el catalogo cuando cambia (sin reiniciar el servidor)
+    // se ejecuta periodicamente en un hilo aparte; las sesiones siguen atendiendo con el contenido anterior
+    private final Catalog catalog;
+    private final Path file;
+    private FileTime lastModified; // marca de la ultima version cargada
+    private long lastSize;
+
+    public CatalogReloader(Catalog catalog, Path file) throws Exception {
+        this.catalog = catalog;
+        this.file = file;
+        this.lastModified = Files.getLastModifiedTime(file);
+        this.lastSize = Files.size(file);
+    }
+
+    @Override
+    public void run() {
+        try {
+            FileTime mod = Files.getLastModifiedTime(file);
+            long size = Files.size(file);
+            if (mod.equals(lastModified) && size == lastSize) return; // sin cambios
+            lastModified = mod;
+            lastSize = size;
+            long t0 = System.nanoTime();
+            Catalog.ReloadStats st;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+                st = catalog.reload(in);
+            }
+            System.out.printf("Catalogo recargado desde %s en %.0f ms: %d productos (%d conservan stock, %d nuevos, %d retirados)%n",
+                    file, (System.nanoTime() - t0) / 1e6, st.products(), st.kept(), st.added(), st.removed());
+        } catch (Exception e) {
+            // un JSON a medio escribir o invalido no tumba al servidor: se sigue con el catalogo actual
+            System.out.println("ERROR al recargar " + file + ": " + e.getMessage() + " (se conserva el catalogo actual)");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class CheckoutCombiner {
+    // compras combinadas (flat combining): cada sesion encola su carrito; el primer hilo que
+    // consigue el turno aplica todo lo encolado en una sola toma de candados y avisa a cada quien
+    // su resultado. Con productos muy disputados evita que cada compra pelee por las mismas franjas
+    private static final int PENDING = 0, DONE_OK = 1, DONE_FAIL = 2, DONE_UNSAVED = 3;
+
+    private static final class Request {
+        final IntIntMap items;
+        final Map<Integer, Reservations.Hold> holds; // apartados de la sesion (null sin --reserve-ttl)
+        final Thread waiter = Thread.currentThread();
+        final long enqueuedNanos = System.nanoTime();
+        volatile int state = PENDING;
+
+        Request(IntIntMap items, Map<Integer, Reservations.Hold> holds) { this.items = items; this.holds = holds; }
+    }
+
+    private final Catalog catalog;
+    private final int maxBatch;
+    private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock turn = new ReentrantLock(); // quien lo tiene es el combinador
+
+    // estadisticas
+    private final LongAdder batches = new LongAdder(), requests = new LongAdder(), waitNanos = new LongAdder();
+    private final AtomicLong maxBatchSeen = new AtomicLong(), maxWaitNanos = new AtomicLong();
+    private final LongAdder[] sizeBuckets = new LongAdder[8]; // 1, 2-3, 4-7, ... 128+
+
+    CheckoutCombiner(Catalog catalog, int maxBatch) {
+        this.catalog = catalog;
+        this.maxBatch = maxBatch;
+        for (int i = 0; i < sizeBuckets.length; i++) sizeBuckets[i] = new LongAdder();
+    }
+
+    // compra un carrito; regresa cuando la compra (y su registro en la bitacora) esta hecha
+    boolean submit(IntIntMap items, Map<Integer, Reservations.Hold> holds) {
+        Request r = new Request(items, holds);
+        queue.add(r);
+        while (r.state == PENDING) {
+            if (turn.tryLock()) {
+                try { combine(); } finally { turn.unlock(); }
+                // quien se encolo despues de la ultima vuelta esta dormido: se le pasa el turno
+                Request next = queue.peek();
+                if (next != null) LockSupport.unpark(next.waiter);
+            } else {
+                LockSupport.park(this); // el combinador nos despierta con el resultado (o con el turno)
+            }
+        }
+        if (r.state == DONE_UNSAVED) throw new StockJournal.Unavailable("La bitacora no pudo guardar el lote");
+        return r.state == DONE_OK;
+    }
+
+    // aplica lotes hasta vaciar la cola (con un tope para no atrapar al combinador para siempre)
+    private void combine() {
+        Request[] batch = new Request[maxBatch];
+        IntIntMap[] items = new IntIntMap[maxBatch];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map<Integer, Reservations.Hold>[] holds = new Map[maxBatch];
+        boolean[] results = new boolean[maxBatch];
+        for (int round = 0; round < 16; round++) {
+            int n = 0;
+            Request r;
+            while (n < maxBatch && (r = queue.poll()) != null) { batch[n] = r; items[n] = r.items; holds[n] = r.holds; n++; }
+            if (n == 0) return;
+
+            // una seccion critica (y un fsync) por lote; si la bitacora falla, ninguna compra del lote se hizo
+            boolean saved = catalog.applyBatch(items, holds, n, results);
+
+            long now = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                long w = now - batch[i].enqueuedNanos;
+                waitNanos.add(w);
+                maxWaitNanos.accumulateAndGet(w, Math::max);
+                batch[i].state = !results[i] ? DONE_FAIL : saved ? DONE_OK : DONE_UNSAVED;
+                LockSupport.unpark(batch[i].waiter);
+                batch[i] = null;
+            }
+            batches.increment();
+            requests.add(n);
+            maxBatchSeen.accumulateAndGet(n, Math::max);
+            sizeBuckets[Math.min(sizeBuckets.length - 1, 31 - Integer.numberOfLeadingZeros(n))].increment();
+        }
+    }
+
+    // resumen de lotes: tamano promedio/maximo, histograma y espera de cada compra
+    public String stats() {
+        long b = batches.sum(), r = requests.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("checkout-combiner lotes=%d compras=%d prom/lote=%.2f max/lote=%d espera_prom=%.1fus espera_max=%.1fus tamanos=[",
+                b, r, b == 0 ? 0.0 : (double) r / b, maxBatchSeen.get(),
+                r == 0 ? 0.0 : waitNanos.sum() / 1e3 / r, maxWaitNanos.get() / 1e3));
+        for (int i = 0; i < sizeBuckets.length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(1 << i).append(i == sizeBuckets.length - 1 ? "+" : "").append(':').append(sizeBuckets[i].sum());
+        }
+        return sb.append(']').toString();
+    }
+}
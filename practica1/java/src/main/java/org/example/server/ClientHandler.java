@@ -2,163 +2,342 @@ package org.example.server;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class ClientHandler {
-    // maneja una sesion de un cliente
+    // maneja una sesion de un cliente (una instancia por conexion; el estado compartido vive en Catalog)
     private final Socket socket;         // socket del cliente
     private final Catalog catalog;       // referencia al catalogo
-    private final Map<Integer,Integer> cart = new LinkedHashMap<>(); // carrito id -> cantidad
+    private final IntIntMap cart = new IntIntMap(); // carrito id -> cantidad (sin cajas, en orden de alta)
+    private boolean framed;              // PROTO 2: cada respuesta termina con una linea "."
+    private boolean fields;              // PROTO 3 (router -> shard): renglones con sus datos al frente (ver tag)
+    private final CommandLine parser = new CommandLine(); // tokenizador reutilizable de la sesion
+    private final Reservations reservations;               // null si ADD no aparta stock
+    private final Map<Integer, Reservations.Hold> holds = new HashMap<>(); // apartados de esta sesion
+    private final ServerMetrics metrics = ServerMetrics.global();
+    private PreparedPurchases.Purchase prepared; // compra preparada (PREPARE) esperando COMMIT/ABORT; null = ninguna
+    private String primaryTicket;        // replica: ticket que devolvio el primario en la ultima compra
+    private final IdleReaper reaper;     // null = la sesion no se cierra por inactividad
+    private IdleReaper.Watch idle;
 
     public ClientHandler(Socket socket, Catalog catalog){
-        this.socket = socket; this.catalog = catalog;
+        this(socket, catalog, null);
     }
 
+    ClientHandler(Socket socket, Catalog catalog, IdleReaper reaper){
+        this.socket = socket; this.catalog = catalog; this.reaper = reaper;
+        this.reservations = catalog.reservations();
+    }
+
+    // sesion sin socket propio: la E/S la hace otro (p.ej. el modo NIO, la API HTTP o un benchmark)
+    public ClientHandler(Catalog catalog){
+        this(null, catalog);
+    }
+
+    // saludo que recibe cada cliente al conectarse
+    static final String GREETING = "Hola :) Escribe HELP para ver los comandos";
+    // unica respuesta a una conexion que llega con el servidor lleno (--max-connections)
+    static final String BUSY = "ERROR busy";
+
     public void handle() {
-        // crea streams de entrada/salida y auto flush
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true)) {
-
-            out.println("Hola :) Escribe HELP para ver los comandos");
-            String line;
-            // bucle principal: leer comando, procesar y responder
-            while ((line = in.readLine()) != null) {
-                String resp = handleCommand(line.trim());
-                out.println(resp);
-                if ("BYE".equals(resp))
-                    break; // termina sesion si servidor responde BYE
-            }
+        metrics.sessionOpened();
+        // al vencer se cierra el socket: la lectura bloqueada falla y la sesion termina como siempre
+        if (reaper != null) idle = reaper.watch(() -> { try { socket.close(); } catch (IOException ignored) {} });
+        try (InputStream raw = new BufferedInputStream(socket.getInputStream());
+             OutputStream os = socket.getOutputStream()) {
+            os.write(encode(GREETING).getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            // el primer byte decide el protocolo: MAGIC = binario, cualquier otro = texto
+            raw.mark(1);
+            int first = raw.read();
+            if (first < 0) return;
+            if ((byte) first == BinaryProtocol.MAGIC) handleBinary(raw, os);
+            else { raw.reset(); handleText(raw, os); }
         }
         catch (IOException ignored) {
         } finally {
+            if (idle != null) idle.stop();
+            endSession();
+            metrics.sessionClosed();
             try { socket.close(); } catch (IOException ignored) {} // libera el socket
         }
     }
 
-    private String handleCommand(String cmdline){
+    // fin de la conexion: lo apartado en el carrito regresa a stock sin esperar el vencimiento
+    void endSession(){
+        if (prepared != null) abortPrepared(); // sin COMMIT no hay venta
+        if (reservations == null) return;
+        for (var h : holds.values()) reservations.release(h);
+        holds.clear();
+    }
+
+    private void handleText(InputStream raw, OutputStream os) throws IOException {
+        // crea streams de entrada/salida en UTF-8, igual que el modo NIO (sin auto flush: se vacia por lotes)
+        BufferedReader in = new BufferedReader(new InputStreamReader(raw, StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        String line;
+        // bucle principal: leer comando, procesar y responder
+        while ((line = in.readLine()) != null) {
+            if (idle != null) idle.touch();
+            String resp = handleCommand(line.trim());
+            out.print(encode(resp));
+            if ("BYE".equals(resp))
+                break; // termina sesion si servidor responde BYE
+            // si el cliente mando varios comandos seguidos, se responden todos y se vacia una vez
+            if (!in.ready())
+                out.flush();
+        }
+        out.flush();
+    }
+
+    private void handleBinary(InputStream raw, OutputStream os) throws IOException {
+        BinaryProtocol proto = new BinaryProtocol(this);
+        os.write(BinaryProtocol.MAGIC); // confirma el cambio a binario
+        os.flush();
+        byte[] chunk = new byte[8 * 1024];
+        int n;
+        // cada lectura puede traer varios comandos: se responden todos con una sola escritura
+        while (!proto.closed() && (n = raw.read(chunk)) > 0) {
+            if (idle != null) idle.touch();
+            byte[] resp = proto.feed(ByteBuffer.wrap(chunk, 0, n));
+            if (resp.length > 0) { os.write(resp); os.flush(); }
+        }
+    }
+
+    // da formato de salida a una respuesta segun el protocolo negociado
+    // v1: el texto tal cual + salto de linea (el cliente no sabe donde termina un bloque)
+    // v2: las lineas que empiezan con '.' se duplican ("..") y se cierra con una linea "."
+    String encode(String resp){
+        return encode(resp, framed);
+    }
+
+    static String encode(String resp, boolean framed){
+        if (!framed) return resp + "\n";
+        StringBuilder sb = new StringBuilder(resp.length() + 8);
+        int start = 0;
+        while (start <= resp.length()) {
+            int nl = resp.indexOf('\n', start);
+            int end = nl < 0 ? resp.length() : nl;
+            if (end > start && resp.charAt(start) == '.') sb.append('.');
+            sb.append(resp, start, end).append('\n');
+            if (nl < 0) break;
+            start = nl + 1;
+        }
+        return sb.append(".\n").toString();
+    }
+
+    // comandos que pueden esperar: fsync de la bitacora (--data-dir), lote del combinador
+    // (--combine-checkout) o viaje al primario (--follow). El modo NIO los corre fuera del Selector
+    static boolean mayBlock(int op){
+        return op == CommandLine.CHECKOUT || op == CommandLine.PREPARE || op == CommandLine.COMMIT;
+    }
+
+    // procesa una linea de comando y devuelve la respuesta (sin salto de linea final)
+    // mide cuanto tarda cada comando para STATS
+    public String handleCommand(String cmdline){
+        long t0 = System.nanoTime();
+        CommandLine cl = parser.parse(cmdline);        // separa por espacios (sin regex ni copias)
+        int op = cl.op();                              // opcode sin distinguir mayusculas
+        String resp = dispatch(op, cl, cmdline);
+        metrics.command(op, System.nanoTime() - t0);
+        return resp;
+    }
+
+    private String dispatch(int op, CommandLine cl, String cmdline){
         // valida entrada vacia
         if (cmdline.isEmpty()) return "ERROR Comando vacio";
-        String[] tok = cmdline.split("\\s+");          // separa por espacios
-        String cmd = tok[0].toUpperCase(Locale.ROOT);  // normaliza comando
+        int ntok = cl.count();
+        // con una compra preparada el carrito queda congelado hasta COMMIT/ABORT
+        if (prepared != null && (op == CommandLine.ADD || op == CommandLine.UPDATE || op == CommandLine.REMOVE
+                || op == CommandLine.CHECKOUT || op == CommandLine.PREPARE))
+            return "ERROR Hay una compra preparada (COMMIT o ABORT)";
 
-        switch (cmd) {
-            case "HELP":
+        switch (op) {
+            case CommandLine.HELP:
                 // muestra ayuda y formato de comandos
                 return """
                        Comandos:
                        HELP | 
                        SEARCH <termino> (buscar producto por id) | 
                        LIST <tipo> (listar productos por tipo) |
+                       SEARCH/LIST ... LIMIT <n> [CURSOR <c>] (por paginas; CURSOR sale al final de cada una) |
+                       SUGGEST <prefijo> <n> (autocompletar por nombre o marca, n <= 20) |
                        ADD <id> <cant> (añadir productos) | 
                        UPDATE <id> <cant> (actualizar cantidad de producto) | 
                        REMOVE <id> (eliminar del carrito) |
                        CART (ver el carrito) | 
                        CHECKOUT (ticket) | 
+                       STATS (metricas del servidor) |
+                       TOP <n> (productos mas vendidos, n <= 100) |
+                       PROTO <1|2> (2: respuestas terminadas en "." para enviar comandos en lote) |
                        QUIT (terminar la conexion)
                        """;
-            case "SEARCH":
+            case CommandLine.SEARCH:
                 // busca por nombre o marca segun termino
-                if (tok.length < 2)
+                if (ntok < 2)
                     return "ERROR Uso: SEARCH <termino>";
+                Page pg = page(cl, ntok);
+                if (pg == null)
+                    return "ERROR LIMIT/CURSOR invalidos";
+                if (pg.limit() > 0) { // solo esta pagina: no se arma el resultado completo
+                    var got = catalog.search(cl.text(1, pg.end()), pg.after(), pg.limit() + 1);
+                    return renderPage(got.isEmpty() ? "Ok 0 resultados" : "Ok resultados:", got, pg.limit());
+                }
                 String term = cmdline.substring(cmdline.indexOf(' ') + 1);
                 var results = catalog.search(term);
                 if (results.isEmpty())
                     return "Ok 0 resultados";
                 StringBuilder sb = new StringBuilder("Ok resultados:\n");
                 for (var p : results)
-                    sb.append(p.line()).append('\n'); // imprime una linea por producto
+                    tag(sb, p.id).append(p.line()).append('\n'); // imprime una linea por producto
                 return sb.toString().trim();
 
-            case "LIST":
+            case CommandLine.LIST:
                 // lista productos por tipo
-                if (tok.length != 2)
+                Page lp = page(cl, ntok);
+                if (lp == null)
+                    return "ERROR LIMIT/CURSOR invalidos";
+                if (lp.end() != 2)
                     return "ERROR Uso: LIST <tipo>";
-                var list = catalog.listByType(tok[1]);
+                if (lp.limit() > 0) {
+                    if (catalog.listByType(cl.text(1)).isEmpty())
+                        return "ERROR Tipo desconocido o sin productos";
+                    return renderPage("Ok Lista:", catalog.listByType(cl.text(1), lp.after(), lp.limit() + 1), lp.limit());
+                }
+                var list = catalog.listByType(cl.text(1));
                 if (list.isEmpty())
                     return "ERROR Tipo desconocido o sin productos";
                 StringBuilder sb2 = new StringBuilder("Ok Lista:\n");
                 for (var p : list)
-                    sb2.append(p.line()).append('\n');
+                    tag(sb2, p.id).append(p.line()).append('\n');
                 return sb2.toString().trim();
 
-            case "ADD":
+            case CommandLine.SUGGEST:
+                // autocompletado por prefijo (el prefijo puede tener espacios; n va al final)
+                if (ntok < 3)
+                    return "ERROR Uso: SUGGEST <prefijo> <n>";
+                {
+                    long n = cl.intAt(ntok - 1);
+                    if (n == CommandLine.BAD || n <= 0 || n > SuggestIndex.TOP)
+                        return "ERROR n debe estar entre 1 y " + SuggestIndex.TOP;
+                    var found = catalog.suggest(cl.text(1, ntok - 1), (int) n);
+                    if (found.isEmpty())
+                        return "Ok 0 sugerencias";
+                    StringBuilder sb3 = new StringBuilder("Ok sugerencias:");
+                    for (var p : found)
+                        tag(sb3.append('\n'), p.id, p.name).append(p.line());
+                    return sb3.toString();
+                }
+
+            case CommandLine.ADD:
                 // agrega un producto al carrito
-                if (tok.length != 3)
+                if (ntok != 3)
                     return "ERROR Uso: ADD <id> <cant>";
-                try {
-                    int id = Integer.parseInt(tok[1]);   // parsea id
-                    int qty = Integer.parseInt(tok[2]);  // parsea cantidad
-                    var p = catalog.get(id);             // obtiene producto
-                    if (p == null)
-                        return "ERROR Producto no existe";
-                    if (qty <= 0)
-                        return "ERROR La cantidad debe ser > 0";
-                    if (p.stock < qty)
-                        return "ERROR Stock insuficiente (disp: " + p.stock + ")";
-                    cart.merge(id, qty, Integer::sum);   // suma si ya estaba en carrito
-                    return "Ok Agregado: " + p.name + " x" + qty;
-                } catch (NumberFormatException e) {
-                    return "ERROR id/cant invalidos";    // valida numeros
+                {
+                    long id = cl.intAt(1), qty = cl.intAt(2); // parsea id y cantidad
+                    if (id == CommandLine.BAD || qty == CommandLine.BAD)
+                        return "ERROR id/cant invalidos";    // valida numeros
+                    int r = addToCart((int) id, (int) qty);
+                    if (r != OK) return errorText(r, (int) id);
+                    Product added = catalog.get((int) id); // null si una recarga lo retiro despues del ADD
+                    return "Ok Agregado: " + (added == null ? "#" + id : added.name) + " x" + qty;
                 }
 
-            case "UPDATE":
+            case CommandLine.UPDATE:
                 // actualiza cantidad; si qty <= 0 elimina del carrito
-                if (tok.length != 3)
+                if (ntok != 3)
                     return "ERROR Uso: UPDATE <id> <cant>";
-                try {
-                    int id = Integer.parseInt(tok[1]);
-                    int qty = Integer.parseInt(tok[2]);
-                    if (!cart.containsKey(id))
-                        return "ERROR Ese producto no esta en el carrito";
-                    var p = catalog.get(id);
-                    if (p == null)
-                        return "ERROR Producto no existe";
-                    if (qty <= 0) {
-                        cart.remove(id);                 // elimina item
-                        return "Ok Eliminado del carrito";
-                    }
-                    if (p.stock < qty)
-                        return "ERROR Stock insuficiente (disp: " + p.stock + ")";
-                    cart.put(id, qty);                   // setea nueva cantidad
+                {
+                    long id = cl.intAt(1), qty = cl.intAt(2);
+                    if (id == CommandLine.BAD || qty == CommandLine.BAD)
+                        return "ERROR id/cant invalidos";
+                    int r = updateCart((int) id, (int) qty);
+                    if (r == REMOVED) return "Ok Eliminado del carrito";
+                    if (r != OK) return errorText(r, (int) id);
                     return "Ok Cantidad actualizada";
-                } catch (NumberFormatException e){
-                    return "ERROR id/cant invalidos";
                 }
 
-            case "REMOVE":
+            case CommandLine.REMOVE:
                 // elimina un item del carrito
-                if (tok.length != 2)
+                if (ntok != 2)
                     return "ERROR Uso: REMOVE <id>";
-                try {
-                    int id = Integer.parseInt(tok[1]);
-                    if (cart.remove(id) != null)
+                {
+                    long id = cl.intAt(1);
+                    if (id == CommandLine.BAD)
+                        return "ERROR id invalido";
+                    if (removeFromCart((int) id))
                         return "Ok Eliminado";
                     return "ERROR No esta en el carrito";
-                } catch (NumberFormatException e){
-                    return "ERROR id invalido";
                 }
 
-            case "CART":
+            case CommandLine.CART:
                 // muestra contenido del carrito y total
                 if (cart.isEmpty())
                     return "Ok Carrito vacío";
                 return renderCart();
 
-            case "CHECKOUT":
+            case CommandLine.CHECKOUT:
                 // intenta comprar: valida stock, descuenta y genera ticket
                 if (cart.isEmpty())
                     return "ERROR Carrito vacio";
-                var req = new LinkedHashMap<>(cart); // copia inmutable de la peticion
-                boolean ok = catalog.tryPurchase(req);
-                if (!ok)
+                IntIntMap req;
+                try {
+                    req = checkout();
+                } catch (StockJournal.Unavailable e) {
+                    return "ERROR La compra no pudo guardarse (" + e.getMessage() + ")";
+                }
+                if (req == null)
                     return "ERROR La compra no pudo completarse (el stock cambio)";
-                String ticket = buildTicket(req);
-                cart.clear(); // limpia carrito tras comprar
-                return "Ok TICKET\n" + ticket;
+                if (primaryTicket != null) return "Ok TICKET\n" + primaryTicket; // compro el primario
+                return "Ok TICKET\n" + buildTicket(req);
 
-            case "QUIT":
+            case CommandLine.PROTO:
+                // negocia el formato de las respuestas; aplica desde esta misma respuesta
+                if (ntok != 2)
+                    return "ERROR Uso: PROTO <1|2>";
+                if (cl.equals(1, "1")) { framed = false; fields = false; return "Ok PROTO 1"; }
+                if (cl.equals(1, "2")) { framed = true;  fields = false; return "Ok PROTO 2"; }
+                // PROTO 3: PROTO 2 + campos para el router (solo en un shard)
+                if (cl.equals(1, "3") && catalog.preparedPurchases() != null) { framed = true; fields = true; return "Ok PROTO 3"; }
+                return "ERROR Version de protocolo no soportada";
+
+            case CommandLine.STATS:
+                // metricas del servidor
+                return "Ok STATS\n" + metrics.render(catalog);
+
+            case CommandLine.TOP:
+                // mas vendidos desde que arranco el servidor (vendidos = cota superior, error = cuanto puede sobrar)
+                if (ntok != 2)
+                    return "ERROR Uso: TOP <n>";
+                {
+                    long n = cl.intAt(1);
+                    if (n == CommandLine.BAD || n <= 0 || n > SalesAnalytics.TOP_MAX)
+                        return "ERROR n debe estar entre 1 y " + SalesAnalytics.TOP_MAX;
+                    var top = catalog.sales().top((int) n);
+                    if (top.isEmpty())
+                        return "Ok 0 vendidos";
+                    StringBuilder sb4 = new StringBuilder("Ok mas vendidos:");
+                    for (var s : top) {
+                        Product p = catalog.get(s.id());
+                        tag(sb4.append('\n'), s.id(), s.count(), s.error()).append(p == null ? "#" + s.id() + " | (retirado)" : p.line())
+                           .append(" | vendidos:").append(s.count()).append(" error:").append(s.error());
+                    }
+                    return sb4.toString();
+                }
+
+            case CommandLine.PREPARE:
+            case CommandLine.COMMIT:
+            case CommandLine.ABORT:
+                // compra en dos fases: solo la usa el router, y solo existe en un shard (--shard)
+                if (catalog.preparedPurchases() == null)
+                    return "ERROR Comando desconocido (HELP)";
+                return twoPhase(op);
+
+            case CommandLine.QUIT:
                 // termina sesion
                 return "BYE";
             default:
@@ -167,31 +346,255 @@ public class ClientHandler {
         }
     }
 
+    // paginacion de SEARCH/LIST: "LIMIT n" y/o "CURSOR c" al final de la linea (en cualquier orden)
+    // end = tokens que quedan para el comando; limit = 0 sin paginar; after = id despues del cual seguir
+    // el cursor es el ultimo id de la pagina anterior: el servidor no guarda estado por consulta
+    record Page(int end, int limit, int after) {}
+
+    static final int DEFAULT_PAGE = 50, MAX_PAGE = 1000;
+
+    // null si LIMIT/CURSOR traen numeros invalidos
+    static Page page(CommandLine cl, int ntok){
+        int end = ntok, limit = 0;
+        long after = Integer.MIN_VALUE;
+        boolean cursor = false;
+        while (end >= 4) { // siempre queda al menos un token despues del comando
+            if (limit == 0 && cl.is(end - 2, "LIMIT")) {
+                long n = cl.intAt(end - 1);
+                if (n == CommandLine.BAD || n <= 0 || n > MAX_PAGE) return null;
+                limit = (int) n;
+            } else if (!cursor && cl.is(end - 2, "CURSOR")) {
+                after = cl.intAt(end - 1);
+                if (after == CommandLine.BAD) return null;
+                cursor = true;
+            } else break;
+            end -= 2;
+        }
+        if (cursor && limit == 0) limit = DEFAULT_PAGE;
+        return new Page(end, limit, (int) after);
+    }
+
+    // una pagina de productos; got trae hasta limit+1 (el de mas indica que hay otra pagina)
+    // la ultima linea es "CURSOR <id>" para pedir la siguiente, o "CURSOR FIN"
+    String renderPage(String header, List<Product> got, int limit){
+        StringBuilder sb = new StringBuilder(header);
+        int n = Math.min(limit, got.size());
+        for (int i = 0; i < n; i++)
+            tag(sb.append('\n'), got.get(i).id).append(got.get(i).line());
+        sb.append("\nCURSOR ").append(got.size() > limit ? String.valueOf(got.get(limit - 1).id) : "FIN");
+        return sb.toString();
+    }
+
+    // resultados de las operaciones de carrito (los comparten el protocolo de texto y el binario)
+    static final int OK = 0, NO_PRODUCT = 1, BAD_QTY = 2, NO_STOCK = 3, NOT_IN_CART = 4,
+            EMPTY_CART = 5, STOCK_CHANGED = 6, REMOVED = 7, NOT_SAVED = 8; // NOT_SAVED: fallo la bitacora
+
+    // agrega qty unidades de un producto al carrito (con apartados: tambien las separa del stock)
+    int addToCart(int id, int qty){
+        var p = catalog.get(id);             // obtiene producto
+        if (p == null) return NO_PRODUCT;
+        if (qty <= 0) return BAD_QTY;
+        boolean ok = reservations != null
+                ? reservations.adjust(holds.computeIfAbsent(id, k -> reservations.newHold(p)), qty)
+                : p.stock >= qty;
+        metrics.stockCheck(!ok);
+        if (!ok) { dropEmptyHold(id); return NO_STOCK; }
+        cart.merge(id, qty);                 // suma si ya estaba en carrito
+        return OK;
+    }
+
+    // fija la cantidad de un producto del carrito; qty <= 0 lo elimina
+    int updateCart(int id, int qty){
+        if (!cart.containsKey(id)) return NOT_IN_CART;
+        var p = catalog.get(id);
+        if (p == null) return NO_PRODUCT;
+        if (qty <= 0) {
+            removeFromCart(id);              // elimina item
+            return REMOVED;
+        }
+        boolean ok;
+        if (reservations != null) {
+            var h = holds.computeIfAbsent(id, k -> reservations.newHold(p));
+            ok = reservations.adjust(h, qty - h.qty); // solo se aparta la diferencia
+        } else ok = p.stock >= qty;
+        metrics.stockCheck(!ok);
+        if (!ok) { dropEmptyHold(id); return NO_STOCK; }
+        cart.put(id, qty);                   // setea nueva cantidad
+        return OK;
+    }
+
+    // un apartado que no logro separar nada no se queda en 'holds' (ni en la rueda de vencimientos)
+    private void dropEmptyHold(int id){
+        var h = holds.get(id);
+        if (h == null || h.qty > 0) return;
+        holds.remove(id);
+        reservations.consumed(h);
+    }
+
+    boolean removeFromCart(int id){
+        var h = holds.remove(id);
+        if (h != null) reservations.release(h);
+        return cart.remove(id);
+    }
+
+    // compra el carrito; devuelve lo comprado (y vacia el carrito) o null si el stock cambio
+    // StockJournal.Unavailable si la compra no pudo guardarse en la bitacora
+    IntIntMap checkout(){
+        var req = cart.copy(); // copia de la peticion
+        ReplicaClient replica = catalog.replica();
+        if (replica != null) { // replica: el stock lo descuenta el primario
+            primaryTicket = replica.checkout(req);
+            metrics.checkout(primaryTicket != null);
+            if (primaryTicket == null) return null;
+            cart.clear();
+            return req;
+        }
+        boolean ok;
+        try {
+            ok = reservations != null ? catalog.purchaseHeld(req, holds) : catalog.tryPurchase(req);
+        } catch (StockJournal.Unavailable e) { // la bitacora no pudo guardar la compra: no hay ticket
+            metrics.checkout(false);
+            throw e;
+        }
+        metrics.checkout(ok);
+        if (!ok) return null;
+        if (reservations != null) {
+            for (var h : holds.values()) reservations.consumed(h);
+            holds.clear();
+        }
+        cart.clear(); // limpia carrito tras comprar
+        return req;
+    }
+
+    // PREPARE / COMMIT / ABORT de la compra en dos fases (en un shard)
+    // lo preparado vence solo si el router no confirma ni cancela a tiempo (--prepare-ttl)
+    private String twoPhase(int op){
+        switch (op) {
+            case CommandLine.PREPARE:
+                // fase 1: separa todo el carrito; "Ok PREPARED <n>" con n = productos distintos
+                if (cart.isEmpty())
+                    return "Ok PREPARED 0";
+                if (!prepareCart())
+                    return "ERROR La compra no pudo completarse (el stock cambio)";
+                return "Ok PREPARED " + prepared.items.size();
+
+            case CommandLine.COMMIT:
+                // fase 2: vende lo preparado y genera ticket
+                if (prepared == null)
+                    return "ERROR No hay compra preparada";
+                var done = prepared;
+                prepared = null;
+                if (!catalog.preparedPurchases().finish(done)) { // vencio: ya regreso a stock
+                    metrics.checkout(false);
+                    return "ERROR La compra preparada vencio";
+                }
+                try {
+                    catalog.commitPrepared(done.items);
+                } catch (StockJournal.Unavailable e) {
+                    metrics.checkout(false);
+                    return "ERROR La compra no pudo guardarse (" + e.getMessage() + ")";
+                }
+                metrics.checkout(true);
+                cart.clear();
+                return "Ok TICKET\n" + buildTicket(done.items);
+
+            default:
+                // fase 2 cancelada: lo preparado regresa a stock y el carrito se conserva
+                if (prepared != null) abortPrepared();
+                return "Ok ABORT";
+        }
+    }
+
+    // separa el carrito completo para un COMMIT posterior (los apartados de la sesion pasan a la compra)
+    private boolean prepareCart(){
+        var req = cart.copy();
+        boolean ok = catalog.prepare(req, holds);
+        if (!ok) { metrics.checkout(false); return false; }
+        if (reservations != null) {
+            for (var h : holds.values()) reservations.consumed(h);
+            holds.clear();
+        }
+        prepared = catalog.preparedPurchases().start(req);
+        return true;
+    }
+
+    private void abortPrepared(){
+        if (catalog.preparedPurchases().finish(prepared)) catalog.abortPrepared(prepared.items);
+        prepared = null;
+    }
+
+    Catalog catalog(){ return catalog; }
+
+    // carrito (id -> cantidad, en orden de alta); solo lectura para el llamador
+    IntIntMap cart(){
+        return cart;
+    }
+
+    // texto de error del protocolo de texto para un resultado de carrito
+    String errorText(int r, int id){
+        switch (r) {
+            case NO_PRODUCT: return "ERROR Producto no existe";
+            case BAD_QTY: return "ERROR La cantidad debe ser > 0";
+            case NO_STOCK: {
+                Product p = catalog.get(id);
+                return "ERROR Stock insuficiente (disp: " + (p == null ? 0 : p.stock) + ")";
+            }
+            case NOT_IN_CART: return "ERROR Ese producto no esta en el carrito";
+            default: return "ERROR";
+        }
+    }
+
+    // PROTO 3: el router combina respuestas de varios shards con estos campos y no con el texto
+    // "@id<TAB>" (SEARCH/LIST), "@id<TAB>nombre<TAB>" (SUGGEST), "@id<TAB>vendidos<TAB>error<TAB>" (TOP),
+    // "@id<TAB>cant<TAB>centavos<TAB>" (CART y ticket); despues va el renglon de siempre
+    private StringBuilder tag(StringBuilder sb, long id){
+        if (fields) sb.append('@').append(id).append('\t');
+        return sb;
+    }
+
+    private StringBuilder tag(StringBuilder sb, long id, String name){
+        if (fields) sb.append('@').append(id).append('\t').append(name).append('\t');
+        return sb;
+    }
+
+    private StringBuilder tag(StringBuilder sb, long id, long a, long b){
+        if (fields) sb.append('@').append(id).append('\t').append(a).append('\t').append(b).append('\t');
+        return sb;
+    }
+
     private String renderCart(){
         // construye vista de carrito y suma total
         StringBuilder sb = new StringBuilder("Ok Carrito:\n");
         double total = 0.0;
-        for (var e : cart.entrySet()) {
-            var p = catalog.get(e.getKey());
-            int qty = e.getValue();
+        for (int i = 0; i < cart.size(); i++) {
+            var p = catalog.get(cart.keyAt(i));
+            int qty = cart.valueAt(i);
+            if (p == null) { // lo retiro una recarga del catalogo; CHECKOUT fallara hasta quitarlo
+                tag(sb, cart.keyAt(i), qty, 0).append(String.format("#%d %-16s x%-3d\n", cart.keyAt(i), "(retirado)", qty));
+                continue;
+            }
             double sub = p.price * qty;  // subtotal por producto
             total += sub;
-            sb.append(String.format("#%d %-16s x%-3d  $%.2f\n", p.id, p.name, qty, sub));
+            tag(sb, p.id, qty, BinaryProtocol.cents(p.price) * qty).append(String.format("#%d %-16s x%-3d  $%.2f\n", p.id, p.name, qty, sub));
         }
         sb.append(String.format("TOTAL: $%.2f", total));
         return sb.toString();
     }
 
-    private String buildTicket(Map<Integer,Integer> req){
+    private String buildTicket(IntIntMap req){
         // arma un ticket simple con fecha y total
         double total = 0.0;
         StringBuilder items = new StringBuilder();
-        for (var e : req.entrySet()){
-            var p = catalog.get(e.getKey());
-            int qty = e.getValue();
+        for (int i = 0; i < req.size(); i++){
+            var p = catalog.get(req.keyAt(i));
+            int qty = req.valueAt(i);
+            if (p == null) { // una recarga lo retiro justo despues de la compra: ya no hay precio que mostrar
+                tag(items, req.keyAt(i), qty, 0).append(String.format("#%d %-16s x%-3d\n", req.keyAt(i), "(retirado)", qty));
+                continue;
+            }
             double sub = p.price * qty;
             total += sub;
-            items.append(String.format("#%d %-16s x%-3d  $%.2f\n", p.id, p.name, qty, sub));
+            tag(items, p.id, qty, BinaryProtocol.cents(p.price) * qty).append(String.format("#%d %-16s x%-3d  $%.2f\n", p.id, p.name, qty, sub));
         }
         String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")); // timestamp
         return "==== TICKET ====\n" + ts + "\n" + items + String.format("TOTAL: $%.2f\n", total) + "============";
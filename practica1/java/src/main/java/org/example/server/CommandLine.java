@@ -0,0 +1,137 @@
+package org.example.server;
+
+public final class CommandLine {
+    // tokenizador de comandos sin regex ni copias: guarda inicio/fin de cada token sobre la linea
+    // original y compara/parsea directo sobre esos rangos. Una instancia por sesion (se reutiliza)
+    public static final int UNKNOWN = 0, HELP = 1, SEARCH = 2, LIST = 3, ADD = 4, UPDATE = 5,
+            REMOVE = 6, CART = 7, CHECKOUT = 8, PROTO = 9, QUIT = 10, STATS = 12, // 11: GET (solo binario)
+            PREPARE = 13, COMMIT = 14, ABORT = 15, // compra en dos fases (los usa el router de shards)
+            SUGGEST = 16, TOP = 17;
+
+    // valor que devuelve intAt cuando el token no es un entero valido
+    public static final long BAD = Long.MIN_VALUE;
+
+    private static final String[] NAMES = {null, "HELP", "SEARCH", "LIST", "ADD", "UPDATE",
+            "REMOVE", "CART", "CHECKOUT", "PROTO", "QUIT", null, "STATS", "PREPARE", "COMMIT", "ABORT", "SUGGEST", "TOP"};
+
+    private CharSequence src;
+    private int[] starts = new int[8], ends = new int[8];
+    private int count;
+
+    // separa la linea en tokens (mismos separadores que \s: espacio, \t, \n, \u000B, \f, \r)
+    public CommandLine parse(CharSequence line) {
+        src = line;
+        count = 0;
+        int n = line.length(), i = 0;
+        while (i < n) {
+            while (i < n && isSpace(line.charAt(i))) i++;
+            if (i >= n) break;
+            int start = i;
+            while (i < n && !isSpace(line.charAt(i))) i++;
+            if (count == starts.length) grow();
+            starts[count] = start;
+            ends[count++] = i;
+        }
+        return this;
+    }
+
+    public int count() { return count; }
+
+    // opcode del primer token (sin distinguir mayusculas)
+    public int op() {
+        if (count == 0) return UNKNOWN;
+        int len = ends[0] - starts[0];
+        int guess = switch (len) { // candidato por largo y primera letra; luego se confirma completo
+            case 3 -> upper(src.charAt(starts[0])) == 'T' ? TOP : ADD;
+            case 4 -> switch (upper(src.charAt(starts[0]))) {
+                case 'H' -> HELP;
+                case 'L' -> LIST;
+                case 'C' -> CART;
+                case 'Q' -> QUIT;
+                default -> UNKNOWN;
+            };
+            case 5 -> switch (upper(src.charAt(starts[0]))) {
+                case 'P' -> PROTO;
+                case 'S' -> STATS;
+                case 'A' -> ABORT;
+                default -> UNKNOWN;
+            };
+            case 6 -> switch (upper(src.charAt(starts[0]))) {
+                case 'S' -> SEARCH;
+                case 'U' -> UPDATE;
+                case 'R' -> REMOVE;
+                case 'C' -> COMMIT;
+                default -> UNKNOWN;
+            };
+            case 7 -> switch (upper(src.charAt(starts[0]))) {
+                case 'P' -> PREPARE;
+                case 'S' -> SUGGEST;
+                default -> UNKNOWN;
+            };
+            case 8 -> CHECKOUT;
+            default -> UNKNOWN;
+        };
+        return guess != UNKNOWN && is(0, NAMES[guess]) ? guess : UNKNOWN;
+    }
+
+    // true si el token es exactamente 'word' (word en mayusculas; el token se compara sin distinguirlas)
+    public boolean is(int tok, String word) {
+        int s = starts[tok], len = ends[tok] - s;
+        if (len != word.length()) return false;
+        for (int i = 0; i < len; i++)
+            if (upper(src.charAt(s + i)) != word.charAt(i)) return false;
+        return true;
+    }
+
+    // true si el token es exactamente 'text' (distingue mayusculas)
+    public boolean equals(int tok, String text) {
+        int s = starts[tok], len = ends[tok] - s;
+        if (len != text.length()) return false;
+        for (int i = 0; i < len; i++)
+            if (src.charAt(s + i) != text.charAt(i)) return false;
+        return true;
+    }
+
+    // entero del token con las mismas reglas que Integer.parseInt; BAD si no es valido
+    public long intAt(int tok) {
+        int i = starts[tok], end = ends[tok];
+        boolean neg = false;
+        char c = src.charAt(i);
+        if (c == '-' || c == '+') {
+            neg = c == '-';
+            if (++i == end) return BAD;
+        }
+        long v = 0;
+        for (; i < end; i++) {
+            int d = Character.digit(src.charAt(i), 10);
+            if (d < 0) return BAD;
+            v = v * 10 + d;
+            if (v > 1L + Integer.MAX_VALUE) return BAD; // ya no cabe en int
+        }
+        v = neg ? -v : v;
+        return (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) ? BAD : v;
+    }
+
+    // copia del token como String (solo donde el catalogo necesita texto)
+    public String text(int tok) {
+        return src.subSequence(starts[tok], ends[tok]).toString();
+    }
+
+    // texto original de los tokens from..to-1, con los espacios que haya entre ellos
+    public String text(int from, int to) {
+        return src.subSequence(starts[from], ends[to - 1]).toString();
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static char upper(char c) {
+        return c < 128 ? (c >= 'a' && c <= 'z' ? (char) (c - 32) : c) : Character.toUpperCase(c);
+    }
+
+    private void grow() {
+        starts = java.util.Arrays.copyOf(starts, count * 2);
+        ends = java.util.Arrays.copyOf(ends, count * 2);
+    }
+}
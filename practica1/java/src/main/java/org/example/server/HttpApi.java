@@ -0,0 +1,388 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpApi {
+    // API HTTP/JSON dentro del mismo proceso: usa el mismo Catalog que las sesiones TCP, sin proxy
+    // ni protocolo de texto de por medio. El HttpServer del JDK mantiene las conexiones abiertas
+    // (keep-alive) entre peticiones.
+    //
+    //   GET    /search?q=<termino>[&limit=n&cursor=c]   GET /list?type=<tipo>[&limit=n&cursor=c]
+    //   GET    /suggest?prefix=<p>&n=<n>                GET /products/<id>
+    //   POST   /carts                                   -> {"cart": "<token>"}
+    //   GET    /carts/<token>                           POST /carts/<token>/items {"id":..,"qty":..}
+    //   PUT    /carts/<token>/items/<id> {"qty":..}     DELETE /carts/<token>/items/<id>
+    //   POST   /carts/<token>/checkout
+    //
+    // las lecturas guardan el JSON ya serializado junto con la version de cada producto incluido:
+    // mientras no cambie el stock/precio de esos productos ni el conjunto del catalogo se responde
+    // con los mismos bytes (validar cuesta una comparacion por producto, no una serializacion)
+    static final int CACHE_ENTRIES = 1024;
+    static final long CART_IDLE_MS = 30 * 60 * 1000L; // carritos HTTP sin uso se descartan
+
+    private final Catalog catalog;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ServerMetrics metrics = ServerMetrics.global();
+
+    // respuesta en cache y lo que la hace valida
+    private record Cached(int generation, Product[] items, int[] versions, byte[] body) {}
+
+    private final Map<String, Cached> cache = new LinkedHashMap<>(256, 0.75f, true) { // LRU
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> e) { return size() > CACHE_ENTRIES; }
+    };
+
+    // carritos HTTP: cada uno es una sesion como las de TCP (mismas reglas de stock y apartados)
+    private static final class Cart {
+        final ClientHandler session;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Cart(Catalog catalog) { session = new ClientHandler(catalog); }
+    }
+
+    private final Map<String, Cart> carts = new ConcurrentHashMap<>();
+    private final AtomicInteger openCarts = new AtomicInteger(); // como --max-connections, pero para carritos
+    private final int maxCarts;
+    private final SecureRandom random = new SecureRandom();
+
+    private HttpApi(Catalog catalog, int maxCarts) {
+        this.catalog = catalog;
+        this.maxCarts = maxCarts;
+    }
+
+    public static HttpApi start(Catalog catalog, int port, int threads, int maxCarts) throws IOException {
+        HttpApi api = new HttpApi(catalog, maxCarts);
+        // el servidor del JDK escribe encabezados y cuerpo por separado: sin TCP_NODELAY cada
+        // respuesta en una conexion reutilizada espera el ACK retrasado del cliente (~40 ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 128);
+        AtomicInteger seq = new AtomicInteger();
+        server.setExecutor(Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", api::handle);
+        server.start();
+        Thread sweeper = new Thread(api::sweepCarts, "http-carts");
+        sweeper.setDaemon(true);
+        sweeper.start();
+        System.out.println("HTTP escuchando en el puerto " + port);
+        return api;
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            route(ex);
+        }
+    }
+
+    private void route(HttpExchange ex) throws IOException {
+        try {
+            String method = ex.getRequestMethod();
+            String[] path = ex.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+            if (method.equals("GET") && path.length == 1) {
+                switch (path[0]) {
+                    case "search" -> { read(ex, CommandLine.SEARCH, q); return; }
+                    case "list" -> { read(ex, CommandLine.LIST, q); return; }
+                    case "suggest" -> { read(ex, CommandLine.SUGGEST, q); return; }
+                }
+            }
+            if (method.equals("GET") && path.length == 2 && path[0].equals("products")) {
+                read(ex, ServerMetrics.GET, Map.of("id", path[1]));
+                return;
+            }
+            if (path[0].equals("carts")) {
+                cart(ex, method, path);
+                return;
+            }
+            send(ex, 404, error("Ruta desconocida"));
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, error(e.getMessage()));
+        }
+    }
+
+    // ---- lecturas (con cache) ----
+
+    private void read(HttpExchange ex, int op, Map<String, String> q) throws IOException {
+        long t0 = System.nanoTime();
+        String key = op + "?" + new TreeMap<>(q);
+        Cached c;
+        synchronized (cache) { c = cache.get(key); }
+        if (c == null || !valid(c)) {
+            int gen = catalog.generation(); // antes de consultar: si cambia a media consulta, no se reutiliza
+            c = render(op, q, gen);
+            if (c == null) { // no existe (404)
+                send(ex, 404, error("No encontrado"));
+                return;
+            }
+            synchronized (cache) { cache.put(key, c); }
+        }
+        send(ex, 200, c.body);
+        metrics.command(op, System.nanoTime() - t0);
+    }
+
+    private boolean valid(Cached c) {
+        if (c.generation != catalog.generation()) return false;
+        for (int i = 0; i < c.items.length; i++)
+            if (c.items[i].version() != c.versions[i]) return false;
+        return true;
+    }
+
+    // serializa la respuesta de una lectura junto con los productos que incluye
+    private Cached render(int op, Map<String, String> q, int gen) throws IOException {
+        int limit = 0, after = Integer.MIN_VALUE;
+        if (q.containsKey("limit")) limit = intParam(q, "limit", 1, ClientHandler.MAX_PAGE);
+        if (q.containsKey("cursor")) {
+            after = intParam(q, "cursor", Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (limit == 0) limit = ClientHandler.DEFAULT_PAGE;
+        }
+        List<Product> got;
+        switch (op) {
+            case CommandLine.SEARCH -> got = limit > 0
+                    ? catalog.search(required(q, "q"), after, limit + 1) : catalog.search(required(q, "q"));
+            case CommandLine.LIST -> got = limit > 0
+                    ? catalog.listByType(required(q, "type"), after, limit + 1) : catalog.listByType(required(q, "type"));
+            case CommandLine.SUGGEST -> got = catalog.suggest(required(q, "prefix"),
+                    intParam(q, "n", 1, SuggestIndex.TOP));
+            default -> {
+                Product p = catalog.get(intParam(q, "id", Integer.MIN_VALUE, Integer.MAX_VALUE));
+                if (p == null) return null;
+                return cached(gen, List.of(p), g -> writeProduct(g, p));
+            }
+        }
+        boolean paged = limit > 0, more = paged && got.size() > limit;
+        List<Product> page = more ? got.subList(0, limit) : got;
+        return cached(gen, page, g -> {
+            g.writeStartObject();
+            g.writeArrayFieldStart("items");
+            for (Product p : page) writeProduct(g, p);
+            g.writeEndArray();
+            if (paged) { // igual que CURSOR en el protocolo de texto: null = ultima pagina
+                if (more) g.writeNumberField("cursor", page.get(page.size() - 1).id);
+                else g.writeNullField("cursor");
+            }
+            g.writeEndObject();
+        });
+    }
+
+    // las versiones se leen antes de serializar (como Product.current): si el stock cambia a media
+    // serializacion, la entrada queda con la version vieja y la siguiente lectura la rehace
+    private Cached cached(int gen, List<Product> items, JsonWriter w) throws IOException {
+        int[] versions = new int[items.size()];
+        for (int i = 0; i < versions.length; i++) versions[i] = items.get(i).version();
+        return new Cached(gen, items.toArray(new Product[0]), versions, json(w));
+    }
+
+    // ---- carritos ----
+
+    private void cart(HttpExchange ex, String method, String[] path) throws IOException {
+        if (path.length == 1) {
+            if (!method.equals("POST")) { send(ex, 405, error("Usa POST /carts")); return; }
+            if (openCarts.incrementAndGet() > maxCarts) { // lleno: igual que "ERROR busy" en TCP
+                openCarts.decrementAndGet();
+                metrics.busyRejected();
+                send(ex, 503, error("Demasiados carritos abiertos, intenta mas tarde"));
+                return;
+            }
+            String token = newToken();
+            carts.put(token, new Cart(catalog));
+            send(ex, 201, json(g -> { g.writeStartObject(); g.writeStringField("cart", token); g.writeEndObject(); }));
+            return;
+        }
+        Cart cart = carts.get(path[1]);
+        if (cart == null) { send(ex, 404, error("Carrito no existe")); return; }
+        cart.lastUsed = System.currentTimeMillis();
+        ClientHandler s = cart.session;
+        synchronized (s) { // una sesion no es concurrente: peticiones del mismo carrito van en fila
+            String sub = path.length > 2 ? path[2] : "";
+            long t0 = System.nanoTime();
+            int op;
+            if (sub.isEmpty() && method.equals("GET")) {
+                op = CommandLine.CART;
+                send(ex, 200, cartJson(s.cart()));
+            } else if (sub.isEmpty() && method.equals("DELETE")) {
+                op = CommandLine.QUIT;
+                if (carts.remove(path[1]) != null) openCarts.decrementAndGet();
+                s.endSession(); // devuelve lo apartado
+                send(ex, 204, null);
+            } else if (sub.equals("items") && path.length == 3 && method.equals("POST")) {
+                op = CommandLine.ADD;
+                JsonNode b = body(ex);
+                int id = b.path("id").asInt(), qty = b.path("qty").asInt();
+                result(ex, s, s.addToCart(id, qty), id);
+            } else if (sub.equals("items") && path.length == 4 && method.equals("PUT")) {
+                op = CommandLine.UPDATE;
+                int id = intOf(path[3]);
+                int r = s.updateCart(id, body(ex).path("qty").asInt());
+                result(ex, s, r == ClientHandler.REMOVED ? ClientHandler.OK : r, id);
+            } else if (sub.equals("items") && path.length == 4 && method.equals("DELETE")) {
+                op = CommandLine.REMOVE;
+                int id = intOf(path[3]);
+                result(ex, s, s.removeFromCart(id) ? ClientHandler.OK : ClientHandler.NOT_IN_CART, id);
+            } else if (sub.equals("checkout") && method.equals("POST")) {
+                op = CommandLine.CHECKOUT;
+                if (s.cart().isEmpty()) { send(ex, 409, error("Carrito vacio")); return; }
+                IntIntMap bought;
+                try { bought = s.checkout(); }
+                catch (StockJournal.Unavailable e) { send(ex, 503, error("La compra no pudo guardarse")); return; }
+                if (bought == null) send(ex, 409, error("La compra no pudo completarse (el stock cambio)"));
+                else send(ex, 200, cartJson(bought));
+            } else {
+                send(ex, 404, error("Ruta desconocida"));
+                return;
+            }
+            metrics.command(op, System.nanoTime() - t0);
+        }
+    }
+
+    // resultado de una operacion de carrito: el carrito actualizado o el error con su status
+    private void result(HttpExchange ex, ClientHandler s, int r, int id) throws IOException {
+        if (r == ClientHandler.OK) { send(ex, 200, cartJson(s.cart())); return; }
+        int status = switch (r) {
+            case ClientHandler.NO_PRODUCT, ClientHandler.NOT_IN_CART -> 404;
+            case ClientHandler.NO_STOCK -> 409;
+            default -> 400;
+        };
+        send(ex, status, error(s.errorText(r, id).replaceFirst("^ERROR ", "")));
+    }
+
+    // {"items":[{"id","name","qty","subtotal"}...],"total":..}
+    private byte[] cartJson(IntIntMap items) throws IOException {
+        return json(g -> {
+            double[] total = {0};
+            g.writeStartObject();
+            g.writeArrayFieldStart("items");
+            for (int i = 0; i < items.size(); i++) {
+                Product p = catalog.get(items.keyAt(i));
+                double sub = p == null ? 0 : p.price * items.valueAt(i);
+                total[0] += sub;
+                g.writeStartObject();
+                g.writeNumberField("id", items.keyAt(i));
+                g.writeStringField("name", p == null ? null : p.name);
+                g.writeNumberField("qty", items.valueAt(i));
+                g.writeNumberField("subtotal", sub);
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+            g.writeNumberField("total", total[0]);
+            g.writeEndObject();
+        });
+    }
+
+    // descarta carritos sin uso (devuelve lo apartado); revisa una vez por minuto
+    private void sweepCarts() {
+        while (true) {
+            try { Thread.sleep(60_000); } catch (InterruptedException e) { return; }
+            long cutoff = System.currentTimeMillis() - CART_IDLE_MS;
+            carts.entrySet().removeIf(e -> {
+                if (e.getValue().lastUsed >= cutoff) return false;
+                synchronized (e.getValue().session) { e.getValue().session.endSession(); }
+                openCarts.decrementAndGet();
+                metrics.idleReaped();
+                return true;
+            });
+        }
+    }
+
+    private String newToken() {
+        byte[] b = new byte[12];
+        random.nextBytes(b);
+        return HexFormat.of().formatHex(b);
+    }
+
+    // ---- JSON y HTTP ----
+
+    private interface JsonWriter {
+        void write(JsonGenerator g) throws IOException;
+    }
+
+    private byte[] json(JsonWriter w) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator g = mapper.getFactory().createGenerator(out)) {
+            w.write(g);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeProduct(JsonGenerator g, Product p) throws IOException {
+        g.writeStartObject();
+        g.writeNumberField("id", p.id);
+        g.writeStringField("name", p.name);
+        g.writeStringField("brand", p.brand);
+        g.writeStringField("type", p.type);
+        g.writeNumberField("price", p.price);
+        g.writeNumberField("stock", p.stock);
+        g.writeEndObject();
+    }
+
+    private byte[] error(String msg) throws IOException {
+        return json(g -> { g.writeStartObject(); g.writeStringField("error", msg); g.writeEndObject(); });
+    }
+
+    private JsonNode body(HttpExchange ex) throws IOException {
+        byte[] b = ex.getRequestBody().readAllBytes();
+        try {
+            return mapper.readTree(b.length == 0 ? "{}".getBytes(StandardCharsets.UTF_8) : b);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON invalido");
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, byte[] body) throws IOException {
+        if (body == null) { ex.sendResponseHeaders(status, -1); return; }
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length); // con largo fijo la conexion queda abierta
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String kv : raw.split("&")) {
+            int eq = kv.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? kv : kv.substring(0, eq), StandardCharsets.UTF_8);
+            String v = eq < 0 ? "" : URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8);
+            q.put(k, v);
+        }
+        return q;
+    }
+
+    private static String required(Map<String, String> q, String key) {
+        String v = q.get(key);
+        if (v == null || v.isBlank()) throw new IllegalArgumentException("Falta el parametro '" + key + "'");
+        return v;
+    }
+
+    private static int intParam(Map<String, String> q, String key, int min, int max) {
+        int v = intOf(required(q, key));
+        if (v < min || v > max) throw new IllegalArgumentException("'" + key + "' fuera de rango");
+        return v;
+    }
+
+    private static int intOf(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Numero invalido: " + s);
+        }
+    }
+}
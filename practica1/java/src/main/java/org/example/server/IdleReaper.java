@@ -0,0 +1,56 @@
+package org.example.server;
+
+public class IdleReaper {
+    // cierra las sesiones que pasan idleMillis sin mandar nada. Un solo hilo (una TimerWheel) vigila
+    // todas, en vez de un SO_TIMEOUT por socket que despierta a cada hilo de sesion.
+    // cada comando solo anota la hora (una escritura volatile); el timer no se mueve con cada comando:
+    // al vencer mira la ultima actividad y, si hubo, se reprograma por lo que falta
+    private final TimerWheel wheel;
+    private final long idleMillis;
+
+    private IdleReaper(long idleMillis) {
+        this.idleMillis = idleMillis;
+        this.wheel = new TimerWheel(Math.max(10, Math.min(1000, idleMillis / 256)), "idle-timer");
+    }
+
+    // null si secs <= 0 (sin cierre por inactividad)
+    static IdleReaper of(int secs) {
+        return secs > 0 ? new IdleReaper(secs * 1000L) : null;
+    }
+
+    // vigilancia de una sesion; onIdle corre en el hilo de la rueda y debe ser breve
+    final class Watch extends TimerWheel.Timeout {
+        private final Runnable onIdle;
+        private volatile long lastActive = System.currentTimeMillis();
+        private volatile boolean stopped;
+
+        private Watch(Runnable onIdle) { this.onIdle = onIdle; }
+
+        void touch() { lastActive = System.currentTimeMillis(); }
+
+        // la sesion termino por su cuenta
+        void stop() {
+            stopped = true;
+            wheel.cancel(this);
+        }
+
+        @Override
+        protected void expire() {
+            if (stopped) return;
+            long idle = System.currentTimeMillis() - lastActive;
+            if (idle < idleMillis) { // hubo actividad: se revisa de nuevo cuando se cumpla el plazo
+                wheel.schedule(this, idleMillis - idle);
+                return;
+            }
+            stopped = true;
+            ServerMetrics.global().idleReaped();
+            onIdle.run();
+        }
+    }
+
+    Watch watch(Runnable onIdle) {
+        Watch w = new Watch(onIdle);
+        wheel.schedule(w, idleMillis);
+        return w;
+    }
+}
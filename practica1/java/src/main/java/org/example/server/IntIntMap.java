@@ -0,0 +1,113 @@
+package org.example.server;
+
+import java.util.Arrays;
+
+public class IntIntMap {
+    // mapa int -> int sin cajas (Integer), en orden de insercion; pensado para carritos
+    // claves y valores viven en arreglos densos; una tabla de direccionamiento abierto
+    // guarda la posicion de cada clave (0 = libre, i+1 = posicion i)
+    private int[] keys, values;
+    private int size;
+    private int[] index; // tamano potencia de 2; null mientras hay pocas entradas (busqueda lineal)
+    private static final int LINEAR_MAX = 8;
+
+    public IntIntMap() { this(4); }
+
+    public IntIntMap(int capacity) {
+        keys = new int[Math.max(1, capacity)];
+        values = new int[keys.length];
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int keyAt(int i) { return keys[i]; }
+    public int valueAt(int i) { return values[i]; }
+
+    public boolean containsKey(int key) { return find(key) >= 0; }
+
+    public int get(int key, int missing) {
+        int i = find(key);
+        return i >= 0 ? values[i] : missing;
+    }
+
+    public void put(int key, int value) {
+        int i = find(key);
+        if (i >= 0) values[i] = value;
+        else append(key, value);
+    }
+
+    // suma delta al valor actual (o lo inserta si no estaba)
+    public void merge(int key, int delta) {
+        int i = find(key);
+        if (i >= 0) values[i] += delta;
+        else append(key, delta);
+    }
+
+    // quita una clave; conserva el orden de las demas
+    public boolean remove(int key) {
+        int i = find(key);
+        if (i < 0) return false;
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        if (index != null) reindex();
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+        if (index != null) Arrays.fill(index, 0);
+    }
+
+    public IntIntMap copy() {
+        IntIntMap c = new IntIntMap(Math.max(4, size));
+        for (int i = 0; i < size; i++) c.append(keys[i], values[i]);
+        return c;
+    }
+
+    private int find(int key) {
+        if (index == null) {
+            for (int i = 0; i < size; i++) if (keys[i] == key) return i;
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int h = mix(key) & mask; ; h = (h + 1) & mask) {
+            int slot = index[h];
+            if (slot == 0) return -1;
+            if (keys[slot - 1] == key) return slot - 1;
+        }
+    }
+
+    private void append(int key, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        if (index != null && size * 2 <= index.length) insertIndex(size - 1);
+        else if (size > LINEAR_MAX) reindex();
+    }
+
+    // reconstruye la tabla con carga maxima de 1/2
+    private void reindex() {
+        if (size <= LINEAR_MAX) { index = null; return; }
+        int cap = Integer.highestOneBit(size * 4 - 1);
+        if (index == null || index.length != cap) index = new int[cap];
+        else Arrays.fill(index, 0);
+        for (int i = 0; i < size; i++) insertIndex(i);
+    }
+
+    private void insertIndex(int pos) {
+        int mask = index.length - 1;
+        int h = mix(keys[pos]) & mask;
+        while (index[h] != 0) h = (h + 1) & mask;
+        index[h] = pos + 1;
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class LineDecoder {
+    // arma lineas a partir de bytes que llegan en pedazos (modo no bloqueante)
+    static final int MAX_LINE = 8 * 1024; // limite de una linea de comando
+
+    private byte[] buf = new byte[256]; // bytes recibidos
+    private int start;                  // inicio de la linea en curso (lo anterior ya se entrego)
+    private int len;                    // bytes validos en buf
+    private int scanned;                // hasta donde ya se busco '\n'
+    private boolean overflow;
+
+    // agrega los bytes leidos del canal
+    public void feed(ByteBuffer src) {
+        // las lineas ya entregadas se descartan una vez por lectura, no una vez por linea
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, len - start);
+            len -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if (len > MAX_LINE) { // la linea en curso ya excede el limite: no se crece el buffer
+            overflow = true;
+            src.position(src.limit());
+            return;
+        }
+        int n = src.remaining();
+        if (len + n > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+        src.get(buf, len, n);
+        len += n;
+    }
+
+    // devuelve la siguiente linea completa (sin '\r\n'), o null si aun no hay
+    public String next() {
+        for (int i = scanned; i < len; i++) {
+            if (buf[i] != '\n') continue;
+            int end = (i > start && buf[i - 1] == '\r') ? i - 1 : i;
+            String line = new String(buf, start, end - start, StandardCharsets.UTF_8);
+            start = scanned = i + 1;
+            return line;
+        }
+        scanned = len;
+        return null;
+    }
+
+    // true si el cliente mando una linea mas larga de lo permitido
+    public boolean overflow() {
+        return overflow || scanned - start > MAX_LINE;
+    }
+}
@@ -0,0 +1,234 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class NioShopServer {
+    // servidor de un solo hilo con Selector: las sesiones inactivas no ocupan hilo
+    // los comandos que pueden esperar (ClientHandler.mayBlock) corren en 'workers' cuando alguna
+    // opcion los hace bloquear; la respuesta regresa por 'done' y la escribe el hilo del Selector
+    private final ServerOptions opts;
+    private final Catalog catalog;
+    private final ByteBuffer readBuf = ByteBuffer.allocateDirect(16 * 1024); // compartido: un solo hilo lee
+    private final IdleReaper reaper;
+    // sesiones que vencieron por inactividad: las marca el hilo del timer, las cierra el del Selector
+    private final ConcurrentLinkedQueue<SelectionKey> idleKeys = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers; // null: ningun comando bloquea, todo corre en el Selector
+    private final ConcurrentLinkedQueue<Done> done = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private static final ByteBuffer BUSY =
+            ByteBuffer.wrap((ClientHandler.BUSY + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+
+    public NioShopServer(ServerOptions opts, Catalog catalog) {
+        this.opts = opts; this.catalog = catalog;
+        this.reaper = IdleReaper.of(opts.idleSecs);
+        boolean blocking = opts.dataDir != null || opts.combineBatch > 0 || opts.follow != null;
+        AtomicInteger n = new AtomicInteger();
+        this.workers = !blocking ? null : Executors.newFixedThreadPool(opts.maxSessions, r -> {
+            Thread t = new Thread(r, "nio-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // respuesta de un comando que corrio en 'workers' (resp null: fallo, se cierra la sesion)
+    private record Done(SelectionKey key, byte[] resp) {}
+
+    // estado de cada conexion, guardado como adjunto de su SelectionKey
+    static final class Session {
+        final ClientHandler handler;                       // carrito y comandos de la sesion
+        final LineDecoder decoder = new LineDecoder();     // bytes -> lineas
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>(); // respuestas por enviar
+        boolean closing;                                   // cerrar al terminar de escribir
+        boolean started;                                   // ya se vio el primer byte (decide el protocolo)
+        BinaryProtocol binary;                             // no nulo si el cliente pidio protocolo binario
+        IdleReaper.Watch idle;                             // null si no hay cierre por inactividad
+        boolean busy;                                      // un comando corre en 'workers': no se lee mas
+        boolean closed;                                    // el canal ya se cerro
+        final CommandLine peek = new CommandLine();        // solo para ver el opcode antes de despachar
+
+        Session(Catalog catalog) { this.handler = new ClientHandler(catalog); }
+
+        void reply(String text) {
+            pending.add(ByteBuffer.wrap(handler.encode(text).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    public void run() throws IOException {
+        try (Selector selector = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+            this.selector = selector;
+            server.bind(new InetSocketAddress(opts.port), 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Escuchando en el puerto " + opts.port + " (modo NIO)");
+
+            while (true) {
+                selector.select();
+                SelectionKey idle;
+                while ((idle = idleKeys.poll()) != null) close(idle);
+                Done d;
+                while ((d = done.poll()) != null) completed(d);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept(server, selector);
+                        else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException e) {
+                        close(key); // el cliente se fue o fallo la E/S
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel server, Selector selector) throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            ServerMetrics metrics = ServerMetrics.global();
+            if (metrics.openConnections() >= opts.maxConnections) { // lleno: una linea y se cierra
+                metrics.busyRejected();
+                try (SocketChannel c = ch) { c.write(BUSY.duplicate()); } catch (IOException ignored) {}
+                continue;
+            }
+            Session s = new Session(catalog);
+            metrics.connectionOpened();
+            metrics.sessionOpened();
+            s.reply(ClientHandler.GREETING);
+            SelectionKey key = ch.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, s);
+            if (reaper != null)
+                s.idle = reaper.watch(() -> { idleKeys.add(key); selector.wakeup(); });
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Session s = (Session) key.attachment();
+        SocketChannel ch = (SocketChannel) key.channel();
+        readBuf.clear();
+        int n = ch.read(readBuf);
+        if (n < 0) { close(key); return; } // fin de stream
+        if (s.idle != null) s.idle.touch();
+        readBuf.flip();
+        if (!s.started && readBuf.hasRemaining()) {
+            s.started = true;
+            if (readBuf.get(0) == BinaryProtocol.MAGIC) { // handshake binario
+                readBuf.get();
+                s.binary = new BinaryProtocol(s.handler);
+                s.pending.add(ByteBuffer.wrap(new byte[]{BinaryProtocol.MAGIC}));
+            }
+        }
+        if (s.binary != null) {
+            if (workers != null) s.binary.deferBlocking();
+            feedBinary(key, s, readBuf);
+            return;
+        }
+        s.decoder.feed(readBuf);
+        process(key, s);
+    }
+
+    private void feedBinary(SelectionKey key, Session s, ByteBuffer src) {
+        byte[] resp = s.binary.feed(src);
+        if (resp.length > 0) s.pending.add(ByteBuffer.wrap(resp));
+        if (s.binary.closed()) s.closing = true;
+        else if (s.binary.blocked()) offload(key, s, s.binary::runBlocking);
+        key.interestOps(interest(s));
+    }
+
+    // atiende las lineas completas; se detiene en la primera que tenga que ir a 'workers'
+    private void process(SelectionKey key, Session s) {
+        String line;
+        while (!s.closing && !s.busy && (line = s.decoder.next()) != null) {
+            String cmd = line.trim();
+            if (workers != null && ClientHandler.mayBlock(s.peek.parse(cmd).op())) {
+                offload(key, s, () -> s.handler.encode(s.handler.handleCommand(cmd)).getBytes(StandardCharsets.UTF_8));
+                break;
+            }
+            String resp = s.handler.handleCommand(cmd);
+            s.reply(resp);
+            if ("BYE".equals(resp)) s.closing = true; // termina sesion tras enviar BYE
+        }
+        if (s.decoder.overflow()) { close(key); return; } // linea demasiado larga
+        key.interestOps(interest(s));
+    }
+
+    // corre el comando en 'workers'; mientras tanto la sesion no lee (las respuestas salen en orden)
+    private void offload(SelectionKey key, Session s, Supplier<byte[]> command) {
+        s.busy = true;
+        workers.execute(() -> {
+            byte[] resp;
+            try {
+                resp = command.get();
+            } catch (RuntimeException e) {
+                System.err.println("Error en comando: " + e);
+                resp = null;
+            }
+            done.add(new Done(key, resp));
+            selector.wakeup();
+        });
+    }
+
+    // de vuelta en el hilo del Selector: encola la respuesta y sigue con lo que ya estaba leido
+    private void completed(Done d) {
+        Session s = (Session) d.key().attachment();
+        s.busy = false;
+        if (s.closed) { finish(s); return; } // se cerro mientras el comando corria
+        if (d.resp() == null) { close(d.key()); return; }
+        s.pending.add(ByteBuffer.wrap(d.resp()));
+        if (s.binary != null) feedBinary(d.key(), s, ByteBuffer.allocate(0));
+        else process(d.key(), s);
+    }
+
+    private static int interest(Session s) {
+        return (s.busy ? 0 : SelectionKey.OP_READ) | (s.pending.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Session s = (Session) key.attachment();
+        SocketChannel ch = (SocketChannel) key.channel();
+        while (!s.pending.isEmpty()) {
+            ByteBuffer b = s.pending.peek();
+            ch.write(b);
+            if (b.hasRemaining()) return; // el socket esta lleno, seguir cuando haya espacio
+            s.pending.poll();
+        }
+        if (s.closing && !s.busy) { close(key); return; }
+        key.interestOps(interest(s)); // nada pendiente: solo lectura (o nada si un comando corre)
+    }
+
+    private static void close(SelectionKey key) {
+        if (key.attachment() instanceof Session s && !s.closed) {
+            s.closed = true;
+            if (s.idle != null) s.idle.stop();
+            if (!s.busy) finish(s); // si un comando corre en 'workers', completed libera al terminar
+        }
+        key.cancel();
+        try { key.channel().close(); } catch (IOException ignored) {}
+    }
+
+    private static void finish(Session s) {
+        s.handler.endSession(); // libera apartados
+        ServerMetrics.global().sessionClosed();
+        ServerMetrics.global().connectionClosed();
+    }
+}
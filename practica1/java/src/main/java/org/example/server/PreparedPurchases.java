@@ -0,0 +1,50 @@
+package org.example.server;
+
+public class PreparedPurchases {
+    // compras preparadas (PREPARE) esperando COMMIT/ABORT del router de shards
+    // si no llegan en ttlMillis (el router se cayo o quedo colgado sin cerrar la conexion)
+    // se cancelan solas y lo apartado regresa a stock
+    private final Catalog catalog;
+    private final long ttlMillis;
+    private final TimerWheel wheel;
+
+    PreparedPurchases(Catalog catalog, long ttlMillis) {
+        this.catalog = catalog;
+        this.ttlMillis = ttlMillis;
+        this.wheel = new TimerWheel(Math.max(10, Math.min(1000, ttlMillis / 256)), "prepare-timer");
+    }
+
+    // una compra preparada; COMMIT, ABORT o el vencimiento la terminan (solo uno gana)
+    final class Purchase extends TimerWheel.Timeout {
+        final IntIntMap items;
+        private boolean done; // lo protege el monitor de la compra
+
+        private Purchase(IntIntMap items) { this.items = items; }
+
+        private synchronized boolean claim() {
+            if (done) return false;
+            done = true;
+            return true;
+        }
+
+        @Override
+        protected void expire() {
+            if (claim()) catalog.abortPrepared(items);
+        }
+    }
+
+    // registra una compra ya preparada en el catalogo y arranca su vencimiento
+    Purchase start(IntIntMap items) {
+        Purchase p = new Purchase(items);
+        wheel.schedule(p, ttlMillis);
+        return p;
+    }
+
+    // toma la compra para confirmarla o cancelarla; false si ya vencio (y se cancelo)
+    boolean finish(Purchase p) {
+        wheel.cancel(p);
+        return p.claim();
+    }
+
+    public long ttlMillis() { return ttlMillis; }
+}
@@ -1,12 +1,22 @@
 package org.example.server;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Product {
     public int id;
     public String name;
     public String brand;
     public String type;
-    public double price;
-    public int stock;
+    public volatile double price;
+    public volatile int stock; // volatile: lo leen sesiones concurrentes (con apartados: lo disponible)
+    public volatile int held;  // unidades apartadas en carritos (ya descontadas de stock)
+
+    // version de los datos que se muestran; sube cada vez que cambia stock o precio
+    private final AtomicInteger version = new AtomicInteger();
+    // ultima linea renderizada y la version con la que se hizo
+    private volatile Rendered rendered;
+
+    private record Rendered(int version, String line) {}
 
     public Product() {}
     public Product(int id, String name, String brand, String type, double price, int stock) {
@@ -18,8 +28,45 @@ public class Product {
         this.stock = stock;
     }
 
-    public String line() { // formato en linea del producto
-        return String.format("#%d | %-16s | %-10s | %-12s | $%.2f | stock:%d",
+    // suma (o resta) existencias; el llamador debe tener el candado de la franja del producto
+    public void adjustStock(int delta) {
+        stock += delta;
+        version.incrementAndGet();
+    }
+
+    // aparta (delta > 0) o devuelve (delta < 0) unidades; mismo candado que adjustStock
+    public void adjustHeld(int delta) {
+        held += delta;
+        adjustStock(-delta);
+    }
+
+    // fija las existencias (replica: el valor que manda el primario) e invalida la linea en cache
+    public void setStock(int stock) {
+        this.stock = stock;
+        version.incrementAndGet();
+    }
+
+    // cambia el precio e invalida la linea en cache
+    public void setPrice(double price) {
+        this.price = price;
+        version.incrementAndGet();
+    }
+
+    public int version() { return version.get(); }
+
+    public String line() { // formato en linea del producto (en cache hasta que cambie stock o precio)
+        return current().line;
+    }
+
+    private Rendered current() {
+        Rendered r = rendered;
+        int v = version.get();
+        if (r != null && r.version == v) return r; // cache vigente
+        // se lee la version antes de formatear: si cambia a media renderizacion, la siguiente llamada re-renderiza
+        String line = String.format("#%d | %-16s | %-10s | %-12s | $%.2f | stock:%d",
                 id, name, brand, type, price, stock);
+        r = new Rendered(v, line);
+        rendered = r;
+        return r;
     }
 }
@@ -0,0 +1,68 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ProductTable {
+    // tabla id -> producto con direccionamiento abierto, sin cajas Integer ni nodos por entrada
+    // la clave es el propio p.id, asi cada ranura es una sola referencia: un lector nunca ve
+    // una clave sin su valor. Lecturas sin candado; escrituras serializadas por el llamador
+    private volatile AtomicReferenceArray<Product> slots = new AtomicReferenceArray<>(16);
+    private volatile int size;
+
+    public Product get(int id) {
+        AtomicReferenceArray<Product> t = slots;
+        int mask = t.length() - 1;
+        for (int h = IntIntMap.mix(id) & mask; ; h = (h + 1) & mask) {
+            Product p = t.get(h);
+            if (p == null || p.id == id) return p;
+        }
+    }
+
+    // inserta o reemplaza; devuelve el producto anterior con ese id (o null)
+    public Product put(Product p) {
+        if ((size + 1) * 2 > slots.length()) resize();
+        AtomicReferenceArray<Product> t = slots;
+        int mask = t.length() - 1;
+        for (int h = IntIntMap.mix(p.id) & mask; ; h = (h + 1) & mask) {
+            Product cur = t.get(h);
+            if (cur == null) { t.set(h, p); size++; return null; }
+            if (cur.id == p.id) { t.set(h, p); return cur; }
+        }
+    }
+
+    // inserta solo si el id no existe; devuelve el existente si lo hay
+    public Product putIfAbsent(Product p) {
+        Product cur = get(p.id);
+        return cur != null ? cur : put(p);
+    }
+
+    public int size() { return size; }
+
+    // copia de todos los productos (orden de la tabla, no por id)
+    public List<Product> values() {
+        AtomicReferenceArray<Product> t = slots;
+        List<Product> out = new ArrayList<>(size);
+        for (int i = 0; i < t.length(); i++) {
+            Product p = t.get(i);
+            if (p != null) out.add(p);
+        }
+        return out;
+    }
+
+    // duplica la tabla y la publica completa (los lectores siguen usando la vieja mientras tanto)
+    private void resize() {
+        AtomicReferenceArray<Product> old = slots;
+        AtomicReferenceArray<Product> t = new AtomicReferenceArray<>(old.length() * 2);
+        int mask = t.length() - 1;
+        for (int i = 0; i < old.length(); i++) {
+            Product p = old.get(i);
+            if (p == null) continue;
+            int h = IntIntMap.mix(p.id) & mask;
+            while (t.get(h) != null) h = (h + 1) & mask;
+            t.set(h, p);
+        }
+        slots = t;
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplicaClient {
+    // replica: recibe del primario (ReplicationFeed) el catalogo y sus cambios y los aplica al catalogo
+    // local, que atiende SEARCH/LIST/SUGGEST/CART sin tocar al primario. Las compras se reenvian.
+    // si la conexion se cae se reintenta cada segundo; al volver llega una foto completa
+    private final Catalog catalog;
+    private final String host;
+    private final int port;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CountDownLatch firstSnapshot = new CountDownLatch(1);
+
+    private volatile int primaryClientPort;   // puerto de clientes del primario (para CHECKOUT)
+    private volatile boolean connected;
+    private volatile long lastSeq, lagMillis, lastMessageAt;
+    private final LongAdder applied = new LongAdder(), snapshots = new LongAdder(), reconnects = new LongAdder();
+
+    private ReplicaClient(Catalog catalog, String address) {
+        this.catalog = catalog;
+        int colon = address.lastIndexOf(':');
+        this.host = address.substring(0, colon);
+        this.port = Integer.parseInt(address.substring(colon + 1));
+    }
+
+    // se conecta a host:puerto de replicacion y espera la primera foto antes de devolver
+    public static ReplicaClient start(Catalog catalog, String address) throws InterruptedException {
+        ReplicaClient r = new ReplicaClient(catalog, address);
+        catalog.attachReplica(r);
+        Thread t = new Thread(r::run, "replica");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Replica: esperando el catalogo de " + address);
+        r.firstSnapshot.await();
+        return r;
+    }
+
+    private void run() {
+        while (true) {
+            try (Socket s = new Socket(host, port)) {
+                connected = true;
+                InputStream in = new BufferedInputStream(s.getInputStream(), 64 * 1024);
+                String line;
+                while ((line = readLine(in)) != null) apply(line, in);
+            } catch (Exception e) {
+                System.out.println("Replica: sin conexion con el primario (" + e.getMessage() + "), reintentando");
+            }
+            connected = false;
+            reconnects.increment();
+            try { Thread.sleep(1000); } catch (InterruptedException e) { return; }
+        }
+    }
+
+    private void apply(String line, InputStream in) throws Exception {
+        String[] f = line.split(" ");
+        long now = System.currentTimeMillis();
+        lastSeq = Long.parseLong(f[1]);
+        lagMillis = Math.max(0, now - Long.parseLong(f[2])); // supone relojes sincronizados
+        lastMessageAt = now;
+        switch (f[0]) {
+            case "SNAPSHOT" -> {
+                primaryClientPort = Integer.parseInt(f[3]);
+                byte[] json = in.readNBytes(Integer.parseInt(f[4]));
+                catalog.replaceAll(new ByteArrayInputStream(json));
+                snapshots.increment();
+                System.out.println("Replica: catalogo recibido (" + catalog.size() + " productos)");
+                firstSnapshot.countDown();
+            }
+            case "S" -> {
+                for (int i = 3; i + 1 < f.length; i += 2) {
+                    Product p = catalog.get(Integer.parseInt(f[i]));
+                    if (p != null) p.setStock(Integer.parseInt(f[i + 1]));
+                }
+                applied.add((f.length - 3) / 2);
+            }
+            case "P" -> {
+                Product p = mapper.readValue(line.substring(line.indexOf('{')), Product.class);
+                catalog.add(p);
+                applied.increment();
+            }
+            default -> {} // H: solo actualiza el retraso
+        }
+    }
+
+    // una linea UTF-8 terminada en '\n' (sin lectores con buffer propio: despues puede venir JSON crudo)
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') return buf.toString(StandardCharsets.UTF_8);
+            buf.write(b);
+        }
+        return null;
+    }
+
+    // reenvia la compra al primario en una conexion propia: ahi se arma el carrito y se compra.
+    // devuelve el ticket del primario, o null si no se pudo (stock cambio o primario caido)
+    String checkout(IntIntMap req) {
+        try (ShardRouter.ShardLink link = new ShardRouter.ShardLink(host + ":" + primaryClientPort)) {
+            for (int i = 0; i < req.size(); i++)
+                if (!link.call("ADD " + req.keyAt(i) + " " + req.valueAt(i)).startsWith("Ok")) return null;
+            String r = link.call("CHECKOUT");
+            return r.startsWith("Ok TICKET\n") ? r.substring("Ok TICKET\n".length()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public String stats() {
+        long since = lastMessageAt == 0 ? -1 : System.currentTimeMillis() - lastMessageAt;
+        return String.format("replica primario=%s:%d conectada=%s seq=%d retraso_ms=%d ultimo_mensaje_ms=%d cambios=%d fotos=%d reconexiones=%d",
+                host, port, connected, lastSeq, lagMillis, since, applied.sum(), snapshots.sum(), reconnects.sum());
+    }
+}
@@ -0,0 +1,235 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplicationFeed {
+    // primario: envia a las replicas el catalogo completo al conectarse y despues los cambios.
+    // las compras solo marcan el id (un put en un mapa); un hilo junta los marcados cada INTERVAL_MS
+    // y manda el stock actual de cada uno. Son valores absolutos: si un id cambia diez veces en un
+    // intervalo viaja una sola vez, y reenviar un valor no altera el resultado.
+    // cada replica tiene su cola y su hilo escritor: una replica lenta no atrasa a las demas. Si su
+    // cola se llena se descarta lo pendiente y se le encola una foto nueva; si tampoco alcanza a
+    // enviarse la foto antes de volver a llenarse, se cierra la conexion (la replica se reconecta sola)
+    //
+    // mensajes (una linea de texto UTF-8 cada uno; seq y millis = reloj del primario al enviar):
+    //   SNAPSHOT <seq> <millis> <puerto clientes> <bytes>  + <bytes> de JSON con todos los productos
+    //   S <seq> <millis> <id> <stock> <id> <stock> ...     stock actual de los ids que cambiaron
+    //   P <seq> <millis> <json>                            producto nuevo o reemplazado (Catalog.add)
+    //   H <seq> <millis>                                   latido (sin cambios en HEARTBEAT_MS)
+    static final int INTERVAL_MS = 20, HEARTBEAT_MS = 1000, MAX_PAIRS = 512;
+    static final int MAX_QUEUED = 250; // mensajes por replica (~5 s de ciclos) antes de resincronizar
+
+    private final Catalog catalog;
+    private final int clientPort;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // ids marcados desde el ultimo envio (los protege el monitor de esta instancia)
+    private IntIntMap dirtyStock = new IntIntMap(), dirtyProducts = new IntIntMap();
+    private boolean resync;
+
+    // replicas conectadas (solo las toca el hilo de envio) y las que esperan su foto inicial
+    private final List<Follower> followers = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Socket> joining = new ConcurrentLinkedQueue<>();
+    private volatile int connected;
+    private long seq, lastSent;
+    private final LongAdder batches = new LongAdder(), stockSent = new LongAdder(), snapshots = new LongAdder();
+    private final LongAdder resyncs = new LongAdder(), dropped = new LongAdder();
+
+    private ReplicationFeed(Catalog catalog, int clientPort) {
+        this.catalog = catalog;
+        this.clientPort = clientPort;
+    }
+
+    // escucha replicas en replPort; clientPort se les informa para que reenvien CHECKOUT
+    public static ReplicationFeed start(Catalog catalog, int replPort, int clientPort) throws IOException {
+        ReplicationFeed f = new ReplicationFeed(catalog, clientPort);
+        ServerSocket server = new ServerSocket(replPort);
+        catalog.attachFeed(f);
+        daemon("replication-accept", () -> {
+            while (true) {
+                try {
+                    Socket s = server.accept();
+                    s.setTcpNoDelay(true);
+                    f.joining.add(s);
+                } catch (IOException e) {
+                    System.out.println("Error replicacion: " + e.getMessage());
+                }
+            }
+        });
+        daemon("replication-ship", () -> {
+            while (true) {
+                try {
+                    Thread.sleep(INTERVAL_MS);
+                    f.ship();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.out.println("Error replicacion: " + e.getMessage());
+                }
+            }
+        });
+        System.out.println("Replicacion: esperando replicas en el puerto " + replPort);
+        return f;
+    }
+
+    synchronized void stockChanged(int id) { dirtyStock.put(id, 0); }
+
+    synchronized void productChanged(int id) { dirtyProducts.put(id, 0); }
+
+    // el catalogo se reemplazo completo (recarga): todas las replicas reciben una foto nueva
+    synchronized void resync() { resync = true; }
+
+    // un ciclo del hilo de envio
+    private void ship() throws IOException {
+        IntIntMap stock, products;
+        boolean full;
+        synchronized (this) { // se intercambian los mapas: las compras no esperan al envio
+            stock = dirtyStock;
+            products = dirtyProducts;
+            full = resync;
+            dirtyStock = new IntIntMap();
+            dirtyProducts = new IntIntMap();
+            resync = false;
+        }
+        long now = System.currentTimeMillis();
+        if (full && !followers.isEmpty()) {
+            byte[] snap = snapshot(now); // la foto ya trae el stock de los ids marcados
+            broadcast(snap);
+        } else if (!followers.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < products.size(); i++) {
+                Product p = catalog.get(products.keyAt(i));
+                if (p != null) sb.append("P ").append(++seq).append(' ').append(now).append(' ')
+                        .append(mapper.writeValueAsString(fields(p))).append('\n');
+            }
+            for (int i = 0; i < stock.size(); i += MAX_PAIRS) {
+                sb.append("S ").append(++seq).append(' ').append(now);
+                for (int k = i; k < Math.min(stock.size(), i + MAX_PAIRS); k++) {
+                    Product p = catalog.get(stock.keyAt(k));
+                    if (p != null) sb.append(' ').append(p.id).append(' ').append(p.stock);
+                }
+                sb.append('\n');
+                batches.increment();
+            }
+            stockSent.add(stock.size());
+            if (sb.length() == 0 && now - lastSent >= HEARTBEAT_MS)
+                sb.append("H ").append(++seq).append(' ').append(now).append('\n');
+            if (sb.length() > 0) broadcast(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!joining.isEmpty()) {
+            // se leyo el stock marcado antes de armar la foto: lo que cambie despues queda marcado
+            // y sale en el siguiente ciclo, tambien para la replica nueva
+            byte[] snap = snapshot(now);
+            Socket s;
+            while ((s = joining.poll()) != null) followers.add(new Follower(s, snap));
+        }
+        connected = followers.size();
+    }
+
+    // encola el mensaje a cada replica; las atrasadas reciben una foto en lugar de lo pendiente
+    private void broadcast(byte[] msg) throws IOException {
+        lastSent = System.currentTimeMillis();
+        byte[] snap = null;
+        for (Iterator<Follower> it = followers.iterator(); it.hasNext(); ) {
+            Follower f = it.next();
+            if (f.closed) { it.remove(); continue; } // se desconecto: al volver recibe una foto nueva
+            if (f.queue.offer(msg)) continue;
+            if (f.resync != null) { // ni la foto anterior alcanzo a salir: se descarta la replica
+                dropped.increment();
+                f.close();
+                it.remove();
+                continue;
+            }
+            if (snap == null) snap = snapshot(lastSent); // ya incluye el mensaje que no cupo
+            resyncs.increment();
+            f.queue.clear();
+            f.resync = snap;
+            f.queue.offer(snap);
+        }
+    }
+
+    // una replica conectada: su cola de mensajes y el hilo que los escribe en su socket
+    private final class Follower {
+        final Socket socket;
+        final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+        volatile byte[] resync; // foto encolada por atraso que aun no se escribe
+        volatile boolean closed;
+
+        Follower(Socket socket, byte[] snap) {
+            this.socket = socket;
+            queue.offer(snap);
+            daemon("replication-out-" + socket.getPort(), this::writeLoop);
+        }
+
+        private void writeLoop() {
+            try (OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)) {
+                while (true) {
+                    byte[] msg = queue.take();
+                    out.write(msg);
+                    if (msg == resync) resync = null;
+                    if (queue.isEmpty()) out.flush(); // lo que se junto mientras escribia sale en un solo envio
+                }
+            } catch (IOException | InterruptedException e) {
+                // la replica se desconecto o se descarto por atraso
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // encabezado + JSON de todo el catalogo con el stock actual
+    private byte[] snapshot(long now) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (JsonGenerator g = mapper.getFactory().createGenerator(json)) {
+            g.writeStartArray();
+            for (Product p : catalog.search("")) mapper.writeValue(g, fields(p));
+            g.writeEndArray();
+        }
+        snapshots.increment();
+        byte[] head = ("SNAPSHOT " + (++seq) + " " + now + " " + clientPort + " " + json.size() + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[head.length + json.size()];
+        System.arraycopy(head, 0, out, 0, head.length);
+        System.arraycopy(json.toByteArray(), 0, out, head.length, json.size());
+        return out;
+    }
+
+    // campos que viajan (lo apartado en carritos del primario no le importa a la replica)
+    private static java.util.Map<String, Object> fields(Product p) {
+        var m = new java.util.LinkedHashMap<String, Object>();
+        m.put("id", p.id);
+        m.put("name", p.name);
+        m.put("brand", p.brand);
+        m.put("type", p.type);
+        m.put("price", p.price);
+        m.put("stock", p.stock);
+        return m;
+    }
+
+    private static void daemon(String name, Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public String stats() {
+        return String.format("replicacion replicas=%d seq=%d lotes_stock=%d ids_enviados=%d fotos=%d resincronizadas=%d descartadas=%d",
+                connected, seq, batches.sum(), stockSent.sum(), snapshots.sum(), resyncs.sum(), dropped.sum());
+    }
+}
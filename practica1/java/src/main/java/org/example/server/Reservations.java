@@ -0,0 +1,46 @@
+package org.example.server;
+
+public class Reservations {
+    // apartados de stock con vencimiento: ADD/UPDATE separan unidades por 'ttlMillis'
+    // y una rueda de tiempo las devuelve al vencer (millones de apartados cuestan O(1) cada uno)
+    private final Catalog catalog;
+    private final long ttlMillis;
+    private final TimerWheel wheel;
+
+    Reservations(Catalog catalog, long ttlMillis) {
+        this.catalog = catalog;
+        this.ttlMillis = ttlMillis;
+        this.wheel = new TimerWheel(Math.max(10, Math.min(1000, ttlMillis / 256)), "reserve-timer");
+    }
+
+    // unidades de un producto apartadas por una sesion
+    final class Hold extends TimerWheel.Timeout {
+        final int id; // por id y no por objeto: una recarga del catalogo reemplaza los Product
+        int qty; // unidades apartadas (las protege el candado de la franja del producto)
+
+        Hold(int id) { this.id = id; }
+
+        @Override
+        protected void expire() { catalog.releaseHold(this); }
+    }
+
+    Hold newHold(Product p) { return new Hold(p.id); }
+
+    // aparta 'delta' unidades mas (o devuelve si es negativo) y reinicia el vencimiento
+    boolean adjust(Hold h, int delta) {
+        if (!catalog.reserve(h, delta)) return false;
+        wheel.schedule(h, ttlMillis);
+        return true;
+    }
+
+    // devuelve todo lo apartado y cancela el vencimiento
+    void release(Hold h) {
+        wheel.cancel(h);
+        catalog.releaseHold(h);
+    }
+
+    // la compra ya consumio el apartado: solo se cancela el timer
+    void consumed(Hold h) { wheel.cancel(h); }
+
+    public long ttlMillis() { return ttlMillis; }
+}
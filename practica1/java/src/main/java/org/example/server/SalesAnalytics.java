@@ -0,0 +1,156 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SalesAnalytics {
+    // ventas en vivo (desde que arranco el proceso), alimentadas por cada compra confirmada:
+    // - mas vendidos: sketch Space-Saving con CAPACITY contadores; la memoria no depende del catalogo.
+    //   Todo producto con mas de total/CAPACITY unidades vendidas esta en el sketch, y cada contador
+    //   sobreestima a lo mas en 'error' (las unidades que heredo del producto que reemplazo)
+    // - unidades e ingresos por tipo: LongAdder por tipo (sin candados; un tipo nuevo entra una vez)
+    static final int CAPACITY = 1024, TOP_MAX = 100;
+
+    // un contador del sketch: count = vendidos (cota superior), error = cuanto puede sobrar
+    public record Seller(int id, long count, long error) {}
+
+    private static final class TypeTotals {
+        final LongAdder units = new LongAdder(), cents = new LongAdder();
+    }
+
+    private final Map<String, TypeTotals> byType = new ConcurrentHashMap<>();
+
+    // sketch: min-heap por count en arreglos paralelos + tabla id -> posicion en el heap
+    // (direccionamiento abierto; slotPos 0 = libre, i+1 = posicion i). Lo protege el monitor de la instancia
+    private final int[] ids = new int[CAPACITY];
+    private final long[] counts = new long[CAPACITY], errors = new long[CAPACITY];
+    private final int[] slotIds = new int[CAPACITY * 4], slotPos = new int[CAPACITY * 4];
+    private int size;
+    private long total;
+
+    // una compra confirmada (se llama fuera de los candados de stock)
+    void sold(Catalog catalog, IntIntMap req) {
+        for (int i = 0; i < req.size(); i++) {
+            Product p = catalog.get(req.keyAt(i));
+            if (p == null) continue;
+            TypeTotals t = byType.get(p.type);
+            if (t == null) t = byType.computeIfAbsent(p.type, k -> new TypeTotals());
+            t.units.add(req.valueAt(i));
+            t.cents.add(Math.round(p.price * 100) * req.valueAt(i));
+        }
+        synchronized (this) {
+            for (int i = 0; i < req.size(); i++) offer(req.keyAt(i), req.valueAt(i));
+        }
+    }
+
+    // los n productos con mas unidades vendidas seguras (count - error), de mayor a menor
+    // (ordenar por count subiria a los recien llegados, que heredan la cuenta del que reemplazaron)
+    public List<Seller> top(int n) {
+        Seller[] all;
+        synchronized (this) {
+            all = new Seller[size];
+            for (int i = 0; i < size; i++) all[i] = new Seller(ids[i], counts[i], errors[i]);
+        }
+        Arrays.sort(all, Comparator.comparingLong((Seller s) -> s.count - s.error).reversed()
+                .thenComparing(Comparator.comparingLong(Seller::count).reversed())
+                .thenComparingInt(Seller::id));
+        return List.of(Arrays.copyOf(all, Math.min(n, all.length)));
+    }
+
+    // lineas para STATS: total, unidades/ingresos por tipo y los 5 primeros
+    public String stats() {
+        StringBuilder sb = new StringBuilder();
+        long units;
+        synchronized (this) { units = total; }
+        sb.append("ventas unidades=").append(units);
+        for (var e : new TreeMap<>(byType).entrySet())
+            sb.append(String.format("%nventas_tipo %s unidades=%d ingresos=%.2f",
+                    e.getKey(), e.getValue().units.sum(), e.getValue().cents.sum() / 100.0));
+        List<String> top = new ArrayList<>();
+        for (Seller s : top(5)) top.add(s.id + ":" + s.count);
+        sb.append(String.format("%nmas_vendidos %s", String.join(" ", top)));
+        return sb.toString();
+    }
+
+    // Space-Saving: si el id ya tiene contador suma; si no, toma un contador libre o reemplaza al menor
+    private void offer(int id, int qty) {
+        total += qty;
+        int at = find(id);
+        if (at < 0) {
+            if (size < CAPACITY) {
+                at = size++;
+                counts[at] = 0;
+                errors[at] = 0;
+            } else { // el menor (raiz) cede su contador: el nuevo hereda su cuenta como error
+                at = 0;
+                unindex(ids[0]);
+                errors[0] = counts[0];
+            }
+            ids[at] = id;
+            index(id, at);
+        }
+        counts[at] += qty;
+        siftDown(at);
+    }
+
+    // el count solo crece: basta bajar en el min-heap
+    private void siftDown(int i) {
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, m = i;
+            if (l < size && counts[l] < counts[m]) m = l;
+            if (r < size && counts[r] < counts[m]) m = r;
+            if (m == i) return;
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+        long c = counts[a]; counts[a] = counts[b]; counts[b] = c;
+        long e = errors[a]; errors[a] = errors[b]; errors[b] = e;
+        index(ids[a], a);
+        index(ids[b], b);
+    }
+
+    // ---- tabla id -> posicion ----
+
+    private int bucket(int id) { return IntIntMap.mix(id) & (slotPos.length - 1); }
+
+    private int find(int id) {
+        for (int b = bucket(id); slotPos[b] != 0; b = (b + 1) & (slotPos.length - 1))
+            if (slotIds[b] == id) return slotPos[b] - 1;
+        return -1;
+    }
+
+    // agrega o actualiza la posicion de id
+    private void index(int id, int at) {
+        int b = bucket(id);
+        while (slotPos[b] != 0 && slotIds[b] != id) b = (b + 1) & (slotPos.length - 1);
+        slotIds[b] = id;
+        slotPos[b] = at + 1;
+    }
+
+    // quita id; corre hacia atras las entradas que venian despues para no cortar su busqueda
+    private void unindex(int id) {
+        int mask = slotPos.length - 1, b = bucket(id);
+        while (slotIds[b] != id || slotPos[b] == 0) b = (b + 1) & mask;
+        slotPos[b] = 0;
+        for (int j = (b + 1) & mask; slotPos[j] != 0; j = (j + 1) & mask) {
+            int home = bucket(slotIds[j]);
+            // la entrada de j puede ocupar el hueco b si su lugar natural no esta entre b y j
+            if (((j - home) & mask) >= ((j - b) & mask)) {
+                slotIds[b] = slotIds[j];
+                slotPos[b] = slotPos[j];
+                slotPos[j] = 0;
+                b = j;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.server;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SearchIndex {
+    // indice invertido de n-gramas (1 a 3 letras) de nombre y marca -> ids ordenados
+    // un termino de hasta 3 letras se resuelve con una sola lista; uno mas largo
+    // intersecta las listas de sus trigramas y verifica los candidatos
+    static final int GRAM = 3;
+
+    private final Map<String, int[]> postings = new HashMap<>(); // gram -> ids ascendentes
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // normaliza un texto para indexar o buscar
+    static String norm(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // indexa p en lugar de old (null si p es nuevo) en una sola escritura:
+    // una busqueda concurrente ve el producto viejo o el nuevo, nunca ninguno
+    public void replace(Product old, Product p) {
+        lock.writeLock().lock();
+        try {
+            if (old != null) for (String g : gramsOf(old)) {
+                int[] ids = postings.get(g);
+                if (ids == null) continue;
+                int[] left = delete(ids, old.id);
+                if (left.length == 0) postings.remove(g);
+                else postings.put(g, left);
+            }
+            for (String g : gramsOf(p)) postings.merge(g, new int[]{p.id}, SearchIndex::insert);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // reconstruye el indice completo de una vez (carga inicial; evita insertar id por id)
+    public void rebuild(Collection<Product> products) {
+        rebuild(products, false);
+    }
+
+    // parallel: reparte los productos en tramos de ids consecutivos, indexa cada tramo en su hilo
+    // y concatena las listas en orden de tramo (asi siguen ordenadas sin volver a ordenar)
+    public void rebuild(Collection<Product> products, boolean parallel) {
+        Product[] sorted = products.toArray(new Product[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(p -> p.id)); // asi cada lista sale ordenada
+        int chunks = parallel ? Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), sorted.length / 10_000)) : 1;
+        List<Map<String, IntBuf>> parts = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) parts.add(null);
+        java.util.stream.IntStream.range(0, chunks).parallel().forEach(k -> {
+            int from = (int) ((long) sorted.length * k / chunks), to = (int) ((long) sorted.length * (k + 1) / chunks);
+            parts.set(k, indexRange(sorted, from, to));
+        });
+
+        Map<String, int[]> built = new HashMap<>(parts.get(0).size() * 2);
+        Map<String, IntBuf> merged = parts.get(0);
+        for (int k = 1; k < chunks; k++)
+            for (var e : parts.get(k).entrySet())
+                merged.merge(e.getKey(), e.getValue(), IntBuf::append);
+        merged.forEach((g, ids) -> built.put(g, ids.toArray()));
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            postings.putAll(built);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // indexa products[from, to) (ordenados por id) en listas crecientes
+    private static Map<String, IntBuf> indexRange(Product[] products, int from, int to) {
+        Map<String, IntBuf> out = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            Product p = products[i];
+            addGrams(norm(p.name), p.id, out);
+            addGrams(norm(p.brand), p.id, out);
+        }
+        return out;
+    }
+
+    private static void addGrams(String s, int id, Map<String, IntBuf> out) {
+        for (int i = 0; i < s.length(); i++)
+            for (int n = 1; n <= GRAM && i + n <= s.length(); n++)
+                out.computeIfAbsent(s.substring(i, i + n), g -> new IntBuf()).addOnce(id);
+    }
+
+    // arreglo de ints que crece; como los ids llegan en orden, un repetido siempre es el ultimo
+    private static final class IntBuf {
+        int[] a = new int[4];
+        int n;
+
+        void addOnce(int id) {
+            if (n > 0 && a[n - 1] == id) return;
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = id;
+        }
+
+        IntBuf append(IntBuf other) {
+            if (n + other.n > a.length) a = Arrays.copyOf(a, n + other.n);
+            System.arraycopy(other.a, 0, a, n, other.n);
+            n += other.n;
+            return this;
+        }
+
+        int[] toArray() { return Arrays.copyOf(a, n); }
+    }
+
+    // ids candidatos para un termino ya normalizado, ascendentes; null si el termino esta vacio
+    // con terminos de mas de 3 letras puede haber falsos positivos: el llamador verifica
+    public int[] candidates(String t) {
+        if (t.isEmpty()) return null;
+        lock.readLock().lock();
+        try {
+            if (t.length() <= GRAM) return postings.getOrDefault(t, EMPTY);
+            // junta las listas de los trigramas y empieza por la mas corta
+            List<int[]> lists = new ArrayList<>();
+            for (int i = 0; i + GRAM <= t.length(); i++) {
+                int[] ids = postings.get(t.substring(i, i + GRAM));
+                if (ids == null) return EMPTY; // un trigrama sin productos: no hay resultados
+                lists.add(ids);
+            }
+            lists.sort(Comparator.comparingInt(a -> a.length));
+            int[] acc = lists.get(0);
+            for (int i = 1; i < lists.size() && acc.length > 0; i++)
+                acc = intersect(acc, lists.get(i));
+            return acc;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    // todos los n-gramas de 1..3 letras del nombre y la marca, sin repetir
+    private static Set<String> gramsOf(Product p) {
+        Set<String> out = new HashSet<>();
+        addGrams(norm(p.name), out);
+        addGrams(norm(p.brand), out);
+        return out;
+    }
+
+    private static void addGrams(String s, Set<String> out) {
+        for (int i = 0; i < s.length(); i++)
+            for (int n = 1; n <= GRAM && i + n <= s.length(); n++)
+                out.add(s.substring(i, i + n));
+    }
+
+    // inserta un id en una lista ordenada (copia; las listas publicadas no se mutan)
+    private static int[] insert(int[] ids, int[] one) {
+        int id = one[0];
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) return ids;
+        pos = -pos - 1;
+        int[] out = new int[ids.length + 1];
+        System.arraycopy(ids, 0, out, 0, pos);
+        out[pos] = id;
+        System.arraycopy(ids, pos, out, pos + 1, ids.length - pos);
+        return out;
+    }
+
+    private static int[] delete(int[] ids, int id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos < 0) return ids;
+        int[] out = new int[ids.length - 1];
+        System.arraycopy(ids, 0, out, 0, pos);
+        System.arraycopy(ids, pos + 1, out, pos, ids.length - pos - 1);
+        return out;
+    }
+
+    // interseccion de dos listas ordenadas; busca en la larga por saltos binarios
+    static int[] intersect(int[] small, int[] big) {
+        int[] out = new int[small.length];
+        int n = 0, from = 0;
+        for (int id : small) {
+            int pos = Arrays.binarySearch(big, from, big.length, id);
+            if (pos >= 0) { out[n++] = id; from = pos + 1; }
+            else from = -pos - 1;
+            if (from >= big.length) break;
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ServerMetrics {
+    // metricas del servidor: contadores e histogramas de latencia por comando, sesiones y compras
+    // registrar cuesta un par de incrementos atomicos; se consultan con STATS o el volcado periodico
+    // nombres de los comandos medidos (indices = opcodes de CommandLine, mas GET del protocolo binario)
+    static final int GET = 11;
+    private static final String[] NAMES = {"UNKNOWN", "HELP", "SEARCH", "LIST", "ADD", "UPDATE",
+            "REMOVE", "CART", "CHECKOUT", "PROTO", "QUIT", "GET", "STATS",
+            "PREPARE", "COMMIT", "ABORT", "SUGGEST", "TOP"};
+
+    private static final ServerMetrics GLOBAL = new ServerMetrics();
+
+    public static ServerMetrics global() { return GLOBAL; }
+
+    private final long startedAt = System.nanoTime();
+    private final Histogram[] latency = new Histogram[NAMES.length];
+    private final LongAdder sessionsTotal = new LongAdder();
+    private final AtomicLong sessionsActive = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong(); // aceptadas y no cerradas (incluye las en espera)
+    private final LongAdder busyRejected = new LongAdder(), idleReaped = new LongAdder();
+    private final LongAdder checkoutOk = new LongAdder(), checkoutFail = new LongAdder();
+    private final LongAdder stockConflicts = new LongAdder(), stockChecks = new LongAdder();
+
+    private ServerMetrics() {
+        for (int i = 0; i < NAMES.length; i++) latency[i] = new Histogram();
+    }
+
+    void command(int op, long nanos) { latency[op].record(nanos); }
+
+    void sessionOpened() { sessionsTotal.increment(); sessionsActive.incrementAndGet(); }
+    void sessionClosed() { sessionsActive.decrementAndGet(); }
+
+    void connectionOpened() { connections.incrementAndGet(); }
+    void connectionClosed() { connections.decrementAndGet(); }
+    void busyRejected() { busyRejected.increment(); }
+    void idleReaped() { idleReaped.increment(); }
+
+    void checkout(boolean ok) {
+        (ok ? checkoutOk : checkoutFail).increment();
+        stockCheck(!ok);
+    }
+
+    // una validacion de stock (ADD/UPDATE/CHECKOUT); conflict = no alcanzo
+    void stockCheck(boolean conflict) {
+        stockChecks.increment();
+        if (conflict) stockConflicts.increment();
+    }
+
+    public long activeSessions() { return sessionsActive.get(); }
+
+    public long openConnections() { return connections.get(); }
+
+    // texto de STATS / del volcado periodico (una metrica por linea)
+    public String render(Catalog catalog) {
+        StringBuilder sb = new StringBuilder();
+        long checks = stockChecks.sum();
+        sb.append(String.format("uptime_s=%d productos=%d%n", (System.nanoTime() - startedAt) / 1_000_000_000L, catalog.size()));
+        sb.append(String.format("sesiones_activas=%d sesiones_total=%d%n", sessionsActive.get(), sessionsTotal.sum()));
+        sb.append(String.format("conexiones=%d en_espera=%d rechazadas_busy=%d cerradas_inactivas=%d%n",
+                connections.get(), Math.max(0, connections.get() - sessionsActive.get()),
+                busyRejected.sum(), idleReaped.sum()));
+        sb.append(String.format("checkout_ok=%d checkout_fallidos=%d conflictos_stock=%d tasa_conflicto=%.4f%n",
+                checkoutOk.sum(), checkoutFail.sum(), stockConflicts.sum(),
+                checks == 0 ? 0.0 : (double) stockConflicts.sum() / checks));
+        sb.append(String.format("%-9s %10s %9s %9s %9s %9s%n", "comando", "total", "p50_us", "p99_us", "max_us", "prom_us"));
+        for (int i = 0; i < NAMES.length; i++) {
+            Histogram h = latency[i];
+            long n = h.count();
+            if (n == 0) continue;
+            sb.append(String.format("%-9s %10d %9.1f %9.1f %9.1f %9.1f%n", NAMES[i], n,
+                    h.percentile(0.50) / 1e3, h.percentile(0.99) / 1e3, h.max() / 1e3, h.mean() / 1e3));
+        }
+        sb.append(catalog.sales().stats()).append('\n');
+        CheckoutCombiner c = catalog.combiner();
+        if (c != null) sb.append(c.stats()).append('\n');
+        ReplicationFeed f = catalog.feed();
+        if (f != null) sb.append(f.stats()).append('\n');
+        ReplicaClient r = catalog.replica();
+        if (r != null) sb.append(r.stats()).append('\n');
+        return sb.toString().trim();
+    }
+
+    // histograma concurrente: cubetas por potencia de 2 de nanosegundos con 8 sub-cubetas (~12% de error)
+    static final class Histogram {
+        private static final int SUB_BITS = 3, SUB = 1 << SUB_BITS;
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB);
+        private final LongAdder total = new LongAdder(), sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long v = Math.max(1, nanos);
+            counts.incrementAndGet(index(v));
+            total.increment();
+            sum.add(v);
+            long m = max.get();
+            while (v > m && !max.compareAndSet(m, v)) m = max.get(); // solo escribe si es nuevo maximo
+        }
+
+        long count() { return total.sum(); }
+        long max() { return max.get(); }
+        double mean() { long n = total.sum(); return n == 0 ? 0 : (double) sum.sum() / n; }
+
+        long percentile(double q) {
+            long n = total.sum();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n), seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return Math.min(max.get(), upper(i));
+            }
+            return max.get();
+        }
+
+        private static int index(long v) {
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            if (exp < SUB_BITS) return (int) v;
+            return (exp - SUB_BITS + 1) * SUB + (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+        }
+
+        private static long upper(int i) {
+            if (i < SUB) return i;
+            int exp = i / SUB + SUB_BITS - 1, sub = i % SUB;
+            return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.server;
+
+public class ServerOptions {
+    // opciones de arranque del servidor (se pasan como --clave=valor)
+    public int port = 5000;          // puerto de escucha
+    public int maxSessions = 256;    // maximo de sesiones atendidas a la vez (modo blocking) | hilos para comandos que esperan (nio)
+    public int maxConnections = 4096; // conexiones abiertas (atendidas + en espera); las demas reciben "ERROR busy"
+    public int idleSecs;             // > 0: cierra sesiones sin comandos por estos segundos (0 = nunca)
+    public String mode = "blocking"; // blocking: un hilo por sesion | nio: un Selector para todas | router: frente de shards
+    public String productsFile;      // JSON de productos externo (null = resources:/products.json)
+    public String dataDir;           // directorio de la bitacora de stock (null = sin persistencia)
+    public int snapshotSecs = 60;    // cada cuanto se toma una foto del stock
+    public int combineBatch;         // > 0: las compras se aplican en lotes de hasta este tamano
+    public int reserveTtlSecs;       // > 0: ADD/UPDATE apartan stock por estos segundos
+    public int statsSecs;            // > 0: imprime las metricas (STATS) cada estos segundos
+    public int reloadSecs;           // > 0: revisa --products cada estos segundos y recarga si cambio
+    public int shardIndex, shardCount; // --shard=i/n: este proceso atiende solo los ids del shard i (0 = sin shards)
+    public int prepareTtlSecs = 30;  // shard: una compra preparada sin COMMIT/ABORT se cancela tras estos segundos
+    public String shards;            // modo router: host:port de cada shard separados por coma, en orden
+    public int replicationPort;      // > 0: primario que acepta replicas en este puerto
+    public int httpPort;             // > 0: API HTTP/JSON en este puerto (mismo catalogo)
+    public int httpThreads = 16;     // hilos que atienden peticiones HTTP
+    public int httpCarts = 1024;     // carritos HTTP abiertos a la vez; los demas POST /carts reciben 503
+    public String follow;            // host:puerto de replicacion del primario: este proceso es replica
+
+    // interpreta los argumentos de linea de comandos
+    public static ServerOptions parse(String[] args) {
+        ServerOptions o = new ServerOptions();
+        for (String a : args) {
+            if (!a.startsWith("--"))
+                throw new IllegalArgumentException("Argumento invalido: " + a);
+            int eq = a.indexOf('=');
+            String key = eq < 0 ? a.substring(2) : a.substring(2, eq);
+            String val = eq < 0 ? "" : a.substring(eq + 1);
+            switch (key) {
+                case "port" -> o.port = Integer.parseInt(val);
+                case "max-sessions" -> o.maxSessions = positive(key, val);
+                case "max-connections" -> o.maxConnections = positive(key, val);
+                case "idle-secs" -> {
+                    o.idleSecs = Integer.parseInt(val);
+                    if (o.idleSecs < 0)
+                        throw new IllegalArgumentException("--idle-secs debe ser >= 0");
+                }
+                case "mode" -> {
+                    if (!val.equals("blocking") && !val.equals("nio") && !val.equals("router"))
+                        throw new IllegalArgumentException("--mode debe ser blocking, nio o router");
+                    o.mode = val;
+                }
+                case "products" -> o.productsFile = val;
+                case "combine-checkout" -> o.combineBatch = positive(key, val);
+                case "reserve-ttl" -> o.reserveTtlSecs = positive(key, val);
+                case "data-dir" -> o.dataDir = val;
+                case "snapshot-secs" -> o.snapshotSecs = positive(key, val);
+                case "stats-secs" -> o.statsSecs = positive(key, val);
+                case "reload-secs" -> o.reloadSecs = positive(key, val);
+                case "shard" -> {
+                    int slash = val.indexOf('/');
+                    if (slash < 0)
+                        throw new IllegalArgumentException("--shard debe ser i/n (p.ej. 0/3)");
+                    o.shardIndex = Integer.parseInt(val.substring(0, slash));
+                    o.shardCount = positive(key, val.substring(slash + 1));
+                    if (o.shardIndex < 0 || o.shardIndex >= o.shardCount)
+                        throw new IllegalArgumentException("--shard: el indice debe estar entre 0 y n-1");
+                }
+                case "shards" -> o.shards = val;
+                case "prepare-ttl" -> o.prepareTtlSecs = positive(key, val);
+                case "replication-port" -> o.replicationPort = positive(key, val);
+                case "follow" -> o.follow = val;
+                case "http-port" -> o.httpPort = positive(key, val);
+                case "http-threads" -> o.httpThreads = positive(key, val);
+                case "http-carts" -> o.httpCarts = positive(key, val);
+                default -> throw new IllegalArgumentException("Opcion desconocida: --" + key);
+            }
+        }
+        if (o.reloadSecs > 0 && o.productsFile == null)
+            throw new IllegalArgumentException("--reload-secs requiere --products");
+        if (o.follow != null && (o.productsFile != null || o.dataDir != null || o.reserveTtlSecs > 0
+                || o.combineBatch > 0 || o.shardCount > 0 || o.replicationPort > 0))
+            throw new IllegalArgumentException("--follow: el catalogo y las compras son del primario "
+                    + "(no admite --products, --data-dir, --reserve-ttl, --combine-checkout, --shard ni --replication-port)");
+        if (o.mode.equals("router") && (o.shards == null || o.shards.isBlank()))
+            throw new IllegalArgumentException("--mode=router requiere --shards=host:port,...");
+        return o;
+    }
+
+    // valida que el valor sea un entero mayor a cero
+    static int positive(String key, String val) {
+        int n = Integer.parseInt(val);
+        if (n <= 0)
+            throw new IllegalArgumentException("--" + key + " debe ser > 0");
+        return n;
+    }
+}
@@ -0,0 +1,398 @@
+package org.example.server;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShardRouter {
+    // frente de un catalogo repartido por id entre varios ShopServer (--shard=i/n)
+    // habla el mismo protocolo de texto con los clientes; por cada sesion abre una conexion a cada shard.
+    // SEARCH/LIST/CART se envian a todos y se combinan; ADD/UPDATE/REMOVE van al shard dueno del id;
+    // CHECKOUT de un solo shard se reenvia tal cual y si el carrito abarca varios se hace en dos fases
+    // (PREPARE en todos, luego COMMIT o ABORT)
+    private final ServerOptions opts;
+    private final String[] shards; // host:port de cada shard, en orden de indice
+
+    public ShardRouter(ServerOptions opts) {
+        this.opts = opts;
+        this.shards = opts.shards.split(",");
+    }
+
+    public void run() throws IOException {
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService sessions = Executors.newFixedThreadPool(opts.maxSessions, r -> {
+            Thread t = new Thread(r, "router-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // las sesiones inactivas se cierran aqui (con sus conexiones a los shards): los shards pueden
+        // correr sin cierre por inactividad y no cortan una conexion que el router todavia usa
+        IdleReaper reaper = IdleReaper.of(opts.idleSecs);
+        ServerMetrics metrics = ServerMetrics.global();
+        try (ServerSocket server = new ServerSocket(opts.port)) {
+            System.out.println("Router escuchando en el puerto " + opts.port + " -> shards " + String.join(", ", shards));
+            while (true) {
+                Socket socket = server.accept();
+                if (metrics.openConnections() >= opts.maxConnections) {
+                    ShopServer.reject(socket);
+                    continue;
+                }
+                metrics.connectionOpened();
+                sessions.execute(() -> {
+                    try {
+                        new Session(socket, reaper).handle();
+                    } finally {
+                        metrics.connectionClosed();
+                    }
+                });
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    // conexion del router a un shard (PROTO 3: cada respuesta termina con "." y los renglones
+    // de producto traen al frente sus campos, ver row)
+    static final class ShardLink implements Closeable {
+        final String address;
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        ShardLink(String address) throws IOException {
+            this.address = address;
+            int colon = address.lastIndexOf(':');
+            socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            in.readLine(); // saludo
+            send("PROTO 3");
+            // un proceso que no es shard responde un solo renglon de ERROR, sin el "." final
+            String r = in.readLine();
+            if (!"Ok PROTO 3".equals(r) || !".".equals(in.readLine()))
+                throw new IOException(address + " no es un shard (--shard): " + r);
+        }
+
+        // envia sin esperar respuesta (para mandar a varios shards y luego leer todas)
+        void send(String cmd) {
+            out.print(cmd);
+            out.print('\n');
+            out.flush();
+        }
+
+        String read() throws IOException {
+            StringBuilder block = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals(".")) return block.toString();
+                if (line.startsWith("..")) line = line.substring(1);
+                if (block.length() > 0) block.append('\n');
+                block.append(line);
+            }
+            throw new EOFException("shard " + address + " cerro la conexion");
+        }
+
+        String call(String cmd) throws IOException {
+            send(cmd);
+            return read();
+        }
+
+        @Override
+        public void close() {
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // una sesion de cliente: sus conexiones a los shards y que shards tienen algo en el carrito
+    private final class Session {
+        private final Socket socket;
+        private final ShardLink[] links = new ShardLink[shards.length];
+        private final boolean[] inCart = new boolean[shards.length];
+        private final CommandLine parser = new CommandLine();
+        private boolean framed;
+        private final IdleReaper reaper;
+
+        Session(Socket socket, IdleReaper reaper) { this.socket = socket; this.reaper = reaper; }
+
+        void handle() {
+            IdleReaper.Watch idle = reaper == null ? null
+                    : reaper.watch(() -> { try { socket.close(); } catch (IOException ignored) {} });
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                try {
+                    for (int i = 0; i < links.length; i++) links[i] = new ShardLink(shards[i]);
+                } catch (IOException e) {
+                    out.println("ERROR Tienda no disponible (shard sin respuesta)");
+                    out.flush();
+                    return;
+                }
+                out.print(ClientHandler.encode(ClientHandler.GREETING, false));
+                out.flush();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (idle != null) idle.touch();
+                    String resp;
+                    try {
+                        resp = route(line.trim());
+                    } catch (IOException e) { // un shard se cayo: la sesion no puede seguir consistente
+                        out.print(ClientHandler.encode("ERROR Shard no disponible: " + e.getMessage(), framed));
+                        break;
+                    } catch (BadReply e) { // las respuestas ya se leyeron completas: la sesion sigue
+                        resp = "ERROR Respuesta inesperada de un shard (" + e.getMessage() + ")";
+                    }
+                    out.print(ClientHandler.encode(resp, framed));
+                    if ("BYE".equals(resp))
+                        break;
+                    if (!in.ready())
+                        out.flush();
+                }
+                out.flush();
+            } catch (IOException e) {
+                System.out.println("Error router: " + e.getMessage());
+            } finally {
+                if (idle != null) idle.stop();
+                for (ShardLink l : links) if (l != null) l.close(); // los shards liberan lo apartado
+            }
+        }
+
+        private String route(String cmdline) throws IOException {
+            if (cmdline.isEmpty()) return "ERROR Comando vacio";
+            CommandLine cl = parser.parse(cmdline);
+            switch (cl.op()) {
+                case CommandLine.HELP:
+                    return links[0].call(cmdline);
+                case CommandLine.SEARCH:
+                case CommandLine.LIST: {
+                    // paginado: cada shard da hasta n despues del mismo cursor (el orden por id es global)
+                    ClientHandler.Page pg = ClientHandler.page(cl, cl.count());
+                    int limit = pg == null ? 0 : pg.limit();
+                    return mergeProducts(cl.op(), fanOut(cmdline, null), limit);
+                }
+                case CommandLine.SUGGEST:
+                    return mergeSuggestions(fanOut(cmdline, null), cl.count() < 3 ? 0 : cl.intAt(cl.count() - 1));
+                case CommandLine.TOP:
+                    return mergeTop(fanOut(cmdline, null), cl.count() == 2 ? cl.intAt(1) : 0);
+                case CommandLine.ADD:
+                case CommandLine.UPDATE:
+                case CommandLine.REMOVE: {
+                    long id = cl.count() > 1 ? cl.intAt(1) : CommandLine.BAD;
+                    // id invalido: cualquier shard da el mismo mensaje de error
+                    int s = id == CommandLine.BAD ? 0 : Catalog.shardOf((int) id, links.length);
+                    String resp = links[s].call(cmdline);
+                    if (cl.op() != CommandLine.REMOVE && resp.startsWith("Ok")) inCart[s] = true;
+                    return resp;
+                }
+                case CommandLine.CART:
+                    return mergeCart(fanOut("CART", inCart));
+                case CommandLine.CHECKOUT:
+                    return checkout();
+                case CommandLine.PROTO:
+                    if (cl.count() != 2) return "ERROR Uso: PROTO <1|2>";
+                    if (cl.equals(1, "1")) { framed = false; return "Ok PROTO 1"; }
+                    if (cl.equals(1, "2")) { framed = true;  return "Ok PROTO 2"; }
+                    return "ERROR Version de protocolo no soportada";
+                case CommandLine.STATS: {
+                    String[] r = fanOut("STATS", null);
+                    StringBuilder sb = new StringBuilder("Ok STATS");
+                    for (int i = 0; i < r.length; i++)
+                        sb.append("\n-- shard ").append(i).append(" (").append(shards[i]).append(") --\n")
+                          .append(r[i].startsWith("Ok STATS\n") ? r[i].substring(9) : r[i]);
+                    return sb.toString();
+                }
+                case CommandLine.QUIT:
+                    return "BYE";
+                default: // PREPARE/COMMIT/ABORT son solo entre router y shards
+                    return "ERROR Comando desconocido (HELP)";
+            }
+        }
+
+        // envia el comando a los shards marcados (todos si only == null) y junta las respuestas
+        // primero se envia a todos y luego se lee: los shards trabajan en paralelo
+        private String[] fanOut(String cmd, boolean[] only) throws IOException {
+            String[] resp = new String[links.length];
+            for (int i = 0; i < links.length; i++) if (only == null || only[i]) links[i].send(cmd);
+            for (int i = 0; i < links.length; i++) if (only == null || only[i]) resp[i] = links[i].read();
+            return resp;
+        }
+
+        // une los renglones de producto de todos los shards, ordenados por id
+        // limit > 0: se queda con la primera pagina combinada y calcula el cursor siguiente
+        private String mergeProducts(int op, String[] resp, int limit) {
+            List<Row> lines = new ArrayList<>();
+            String header = null, error = null;
+            boolean more = false, listed = false; // listed: algun shard conoce el tipo
+            for (String r : resp) {
+                if (r.startsWith("ERROR")) { if (error == null) error = r; continue; }
+                String[] part = r.split("\n");
+                if (header == null || part[0].endsWith(":")) header = part[0];
+                listed = true;
+                for (int i = 1; i < part.length; i++) {
+                    if (part[i].startsWith("CURSOR ")) more |= !part[i].equals("CURSOR FIN");
+                    else lines.add(row(part[i], 1));
+                }
+            }
+            if (!listed) return error;
+            lines.sort(Comparator.comparingLong(r -> r.num(0)));
+            if (limit > 0) {
+                if (lines.size() > limit) { more = true; lines = lines.subList(0, limit); }
+                String cursor = more ? String.valueOf(lines.get(limit - 1).num(0)) : "FIN";
+                if (lines.isEmpty() && op == CommandLine.SEARCH) header = "Ok 0 resultados";
+                return header + text(lines) + "\nCURSOR " + cursor;
+            } else if (lines.isEmpty()) {
+                return op == CommandLine.SEARCH ? "Ok 0 resultados" : "ERROR Tipo desconocido o sin productos";
+            }
+            return header + text(lines);
+        }
+
+        // cada shard cuenta solo sus ids (no se repiten entre shards): basta ordenar todo junto
+        private String mergeTop(String[] resp, long n) {
+            List<Row> lines = new ArrayList<>();
+            for (String r : resp) {
+                if (r.startsWith("ERROR")) return r; // mismo error en todos los shards
+                String[] part = r.split("\n");
+                for (int i = 1; i < part.length; i++) lines.add(row(part[i], 3)); // id, vendidos, error
+            }
+            if (lines.isEmpty()) return "Ok 0 vendidos";
+            // mismo orden que SalesAnalytics.top: vendidos seguros, luego vendidos, luego id
+            lines.sort(Comparator.comparingLong((Row r) -> r.num(2) - r.num(1))
+                    .thenComparingLong(r -> -r.num(1))
+                    .thenComparingLong(r -> r.num(0)));
+            return "Ok mas vendidos:" + text(lines.subList(0, (int) Math.min(n, lines.size())));
+        }
+
+        // los primeros n de todos los shards en el mismo orden que SuggestIndex (nombre y luego id)
+        private String mergeSuggestions(String[] resp, long n) {
+            List<Row> lines = new ArrayList<>();
+            for (String r : resp) {
+                if (r.startsWith("ERROR")) return r; // mismo error en todos los shards
+                String[] part = r.split("\n");
+                for (int i = 1; i < part.length; i++) lines.add(row(part[i], 2)); // id, nombre
+            }
+            if (lines.isEmpty()) return "Ok 0 sugerencias";
+            lines.sort(Comparator.comparing((Row r) -> r.field(1), String.CASE_INSENSITIVE_ORDER)
+                    .thenComparingLong(r -> r.num(0)));
+            return "Ok sugerencias:" + text(lines.subList(0, (int) Math.min(n, lines.size())));
+        }
+
+        // une los carritos parciales y suma el total
+        private String mergeCart(String[] resp) {
+            StringBuilder items = new StringBuilder();
+            long cents = 0;
+            for (String r : resp) {
+                if (r == null || !r.startsWith("Ok Carrito:")) continue;
+                for (String l : r.split("\n")) {
+                    if (!l.startsWith("@")) continue; // encabezado y TOTAL del shard
+                    Row row = row(l, 3); // id, cant, centavos
+                    cents += row.num(2);
+                    items.append(row.text()).append('\n');
+                }
+            }
+            if (items.length() == 0) return "Ok Carrito vacío";
+            return "Ok Carrito:\n" + items + String.format("TOTAL: $%.2f", cents / 100.0);
+        }
+
+        private String checkout() throws IOException {
+            int owners = 0, last = -1;
+            for (int i = 0; i < inCart.length; i++) if (inCart[i]) { owners++; last = i; }
+            if (owners == 0) return "ERROR Carrito vacio";
+            if (owners == 1) { // un solo shard: su CHECKOUT ya es atomico
+                String r = links[last].call("CHECKOUT");
+                if (!r.startsWith("Ok TICKET")) return r;
+                inCart[last] = false;
+                return "Ok TICKET\n" + mergeTickets(new String[]{r});
+            }
+            // fase 1: todos separan su parte; si alguno no puede, los demas la devuelven
+            String[] prep = fanOut("PREPARE", inCart);
+            boolean[] prepared = new boolean[links.length];
+            String failure = null;
+            int items = 0;
+            for (int i = 0; i < prep.length; i++) {
+                if (prep[i] == null) continue;
+                if (prep[i].startsWith("Ok PREPARED ")) {
+                    int n = Integer.parseInt(prep[i].substring(12).trim());
+                    prepared[i] = n > 0;
+                    items += n;
+                } else if (failure == null) failure = prep[i];
+            }
+            if (failure != null || items == 0) {
+                fanOut("ABORT", prepared);
+                return failure != null ? failure : "ERROR Carrito vacio";
+            }
+            // fase 2: todos confirmaron; se vende en cada shard y se arma un solo ticket
+            // un COMMIT puede fallar (lo preparado vencio en el shard, o su bitacora fallo): lo demas ya
+            // se vendio y no hay forma de deshacerlo, asi que se avisa que la compra quedo incompleta
+            String[] tickets = fanOut("COMMIT", prepared);
+            StringBuilder failed = new StringBuilder();
+            for (int i = 0; i < tickets.length; i++) {
+                if (tickets[i] == null) continue;
+                if (tickets[i].startsWith("Ok TICKET")) { inCart[i] = false; continue; }
+                failed.append(failed.length() == 0 ? "" : "; ").append("shard ").append(i).append(": ").append(tickets[i]);
+                tickets[i] = null; // su parte sigue en el carrito
+            }
+            if (failed.length() > 0)
+                return "ERROR Compra incompleta (" + failed + "); se vendio:\n" + mergeTickets(tickets);
+            return "Ok TICKET\n" + mergeTickets(tickets);
+        }
+
+        private String mergeTickets(String[] tickets) {
+            StringBuilder items = new StringBuilder();
+            long cents = 0;
+            for (String t : tickets) {
+                if (t == null) continue;
+                for (String l : t.split("\n")) {
+                    if (!l.startsWith("@")) continue; // fecha, TOTAL y bordes del ticket del shard
+                    Row row = row(l, 3); // id, cant, centavos
+                    cents += row.num(2);
+                    items.append(row.text()).append('\n');
+                }
+            }
+            String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            return "==== TICKET ====\n" + ts + "\n" + items + String.format("TOTAL: $%.2f\n", cents / 100.0) + "============";
+        }
+    }
+
+    // un shard respondio algo distinto de lo esperado (p.ej. un ERROR donde iban renglones "@...")
+    private static final class BadReply extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadReply(String msg) { super(msg); }
+    }
+
+    // renglon de un shard con PROTO 3: "@campo<TAB>...<TAB>" con n campos + el texto para el cliente
+    private record Row(String[] fields, String text) {
+        String field(int i) { return fields[i]; }
+
+        long num(int i) {
+            try { return Long.parseLong(fields[i]); }
+            catch (NumberFormatException e) { throw new BadReply("campo no numerico: " + fields[i]); }
+        }
+    }
+
+    private static Row row(String line, int n) {
+        String[] f = new String[n];
+        int at = 1; // despues de '@'
+        for (int i = 0; i < n; i++) {
+            int tab = line.indexOf('\t', at);
+            if (!line.startsWith("@") || tab < 0) throw new BadReply("renglon sin campos: " + line);
+            f[i] = line.substring(at, tab);
+            at = tab + 1;
+        }
+        return new Row(f, line.substring(at));
+    }
+
+    // renglones para el cliente, cada uno precedido de '\n' (van despues del encabezado)
+    private static String text(List<Row> rows) {
+        StringBuilder sb = new StringBuilder();
+        for (Row r : rows) sb.append('\n').append(r.text());
+        return sb.toString();
+    }
+}
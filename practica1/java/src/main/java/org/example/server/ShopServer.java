@@ -1,34 +1,146 @@
 package org.example.server;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ShopServer {
     public static void main(String[] args) throws Exception {
-        int port = 5000; // puerto fijo
-        Catalog catalog = loadCatalog(); // carga los productos
+        ServerOptions opts = ServerOptions.parse(args); // lee opciones (--port, --max-sessions, --mode, ...)
+        if (opts.mode.equals("router")) { // sin catalogo propio: reparte los comandos entre los shards
+            new ShardRouter(opts).run();
+            return;
+        }
+        Catalog catalog;
+        if (opts.follow != null) { // replica: el catalogo llega del primario y se mantiene al dia
+            catalog = new Catalog();
+            ReplicaClient.start(catalog, opts.follow);
+        } else {
+            catalog = loadCatalog(opts); // carga los productos
+        }
+        if (opts.shardCount > 0) { // solo los ids de este shard (el router envia aqui solo esos)
+            catalog.restrictToShard(opts.shardIndex, opts.shardCount);
+            catalog.enablePreparedPurchases(opts.prepareTtlSecs * 1000L); // el router coordina la compra en dos fases
+            System.out.println("Shard " + opts.shardIndex + "/" + opts.shardCount + ": " + catalog.size() + " productos");
+        }
+        if (opts.reserveTtlSecs > 0) // el carrito separa stock y lo devuelve al vencer
+            catalog.enableReservations(opts.reserveTtlSecs * 1000L);
+        if (opts.combineBatch > 0) // compras concurrentes se aplican en lote
+            catalog.enableCombiner(opts.combineBatch);
+        if (opts.statsSecs > 0) // mismo reporte que el comando STATS
+            every("stats", opts.statsSecs, () -> System.out.print(ServerMetrics.global().render(catalog)));
+        if (opts.reloadSecs > 0) // cambios al JSON se publican sin reiniciar (carritos y stock se conservan)
+            every("catalog-reload", opts.reloadSecs, new CatalogReloader(catalog, Path.of(opts.productsFile)));
+        if (opts.dataDir != null) { // recupera el stock vendido y registra las compras nuevas
+            StockJournal journal = StockJournal.open(Path.of(opts.dataDir), catalog, opts.snapshotSecs);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> { // Ctrl+C / kill: lo aceptado llega a disco
+                try { journal.close(); }
+                catch (IOException e) { System.out.println("ERROR al cerrar WAL: " + e.getMessage()); }
+            }, "wal-close"));
+        }
+        if (opts.replicationPort > 0) // replicas de solo lectura reciben el stock ya recuperado
+            ReplicationFeed.start(catalog, opts.replicationPort, opts.port);
+        if (opts.httpPort > 0) // clientes web sin proxy: JSON directo sobre el mismo catalogo
+            HttpApi.start(catalog, opts.httpPort, opts.httpThreads, opts.httpCarts);
 
-        try (ServerSocket server = new ServerSocket(port)) {
-            System.out.println("Escuchando en el puerto " + port);
+        if (opts.mode.equals("nio")) { // mismo protocolo, sin un hilo por cliente
+            new NioShopServer(opts, catalog).run();
+            return;
+        }
+
+        // pool acotado: cada sesion ocupa un hilo, las demas esperan turno en la cola
+        // (hasta --max-connections en total; con el servidor lleno se responde "ERROR busy" y se cierra)
+        ExecutorService sessions = Executors.newFixedThreadPool(opts.maxSessions, sessionThreads());
+        IdleReaper reaper = IdleReaper.of(opts.idleSecs); // un timer para todas las sesiones
+        ServerMetrics metrics = ServerMetrics.global();
+        try (ServerSocket server = new ServerSocket(opts.port)) {
+            System.out.println("Escuchando en el puerto " + opts.port + " (max sesiones: " + opts.maxSessions + ")");
             while (true) {
                 Socket socket = server.accept();    // bloquea hasta que llegue un cliente
-                new ClientHandler(socket, catalog).handle();
+                if (metrics.openConnections() >= opts.maxConnections) { // solo este hilo suma conexiones
+                    reject(socket);
+                    continue;
+                }
+                metrics.connectionOpened();
+                sessions.execute(() -> {
+                    try {
+                        new ClientHandler(socket, catalog, reaper).handle();
+                    } finally {
+                        metrics.connectionClosed();
+                    }
+                });
             }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    // rechazo rapido en el hilo que acepta: una linea y se cierra (sin pasar por la cola del pool)
+    static void reject(Socket socket) {
+        ServerMetrics.global().busyRejected();
+        try (socket) {
+            socket.getOutputStream().write((ClientHandler.BUSY + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
         }
     }
 
-    private static Catalog loadCatalog() {
-        try (InputStream in = ShopServer.class.getResourceAsStream("/products.json")) {
-            if (in != null) {
-                System.out.println("Productos cargado desde resources:/products.json");
-                return Catalog.fromJson(in);
+    // ejecuta algo cada 'secs' segundos en un hilo aparte
+    private static void every(String name, int secs, Runnable r) {
+        ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor(x -> {
+            Thread t = new Thread(x, name);
+            t.setDaemon(true);
+            return t;
+        });
+        ex.scheduleAtFixedRate(r, secs, secs, TimeUnit.SECONDS);
+    }
+
+    // nombra los hilos de sesion para identificarlos en un volcado de hilos
+    private static ThreadFactory sessionThreads() {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "session-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static Catalog loadCatalog(ServerOptions opts) {
+        try {
+            if (opts.productsFile != null) { // archivo externo (catalogos grandes)
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(Path.of(opts.productsFile)), 64 * 1024)) {
+                    return timedLoad(in, opts.productsFile);
+                }
+            }
+            try (InputStream in = ShopServer.class.getResourceAsStream("/products.json")) {
+                if (in != null)
+                    return timedLoad(in, "resources:/products.json");
+                System.out.println("products.json no encontrado");
             }
-            System.out.println("products.json no encontrado");
         } catch (Exception e) {
             System.out.println("ERROR al cargar JSON: " + e.getMessage());
             System.out.println("Usando productos de ejemplo");
         }
         return Catalog.sample();
     }
+
+    // carga el catalogo e informa cuantos productos por segundo se leyeron
+    private static Catalog timedLoad(InputStream in, String source) throws Exception {
+        long t0 = System.nanoTime();
+        Catalog c = Catalog.fromJson(in);
+        double secs = Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+        System.out.printf("Productos cargado desde %s: %d en %.0f ms (%.0f productos/s)%n",
+                source, c.size(), secs * 1000, c.size() / secs);
+        return c;
+    }
 }
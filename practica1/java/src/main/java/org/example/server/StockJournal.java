@@ -0,0 +1,317 @@
+package org.example.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+public class StockJournal implements Closeable {
+    // bitacora de escritura anticipada (WAL) de los cambios de stock + fotos periodicas
+    // archivos en el directorio de datos:
+    //   wal-<n>.log       registros [largo int][crc int][n x (id int, delta int)] del segmento n
+    //   snapshot-<n>.bin  stock de todos los productos justo al iniciar el segmento n
+    // al arrancar: se aplica la foto mas reciente y luego los segmentos desde el suyo en adelante
+    private final Path dir;
+    private final Catalog catalog;
+
+    // registros aceptados y aun no escritos; los protege el monitor de este objeto
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSeq;   // ultimo registro aceptado
+    private long durableSeq;    // ultimo registro ya en disco (fsync)
+    private boolean closed;
+    private IOException failure; // primer error de escritura: la bitacora ya no acepta registros
+
+    // canal del segmento actual; ioLock ordena escritura, fsync y rotacion
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segment;
+
+    private final Thread writer;
+    private final ScheduledExecutorService snapshots;
+
+    // la bitacora no puede garantizar el registro (fallo de E/S o ya cerrada): la compra no se confirma
+    public static final class Unavailable extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        Unavailable(String msg) { super(msg); }
+    }
+
+    private StockJournal(Path dir, Catalog catalog, long segment, long snapshotSecs) throws IOException {
+        this.dir = dir; this.catalog = catalog; this.segment = segment;
+        this.channel = openSegment(segment);
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wal-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try { snapshot(); }
+            catch (IOException e) { System.out.println("ERROR al escribir snapshot: " + e.getMessage()); }
+        }, snapshotSecs, snapshotSecs, TimeUnit.SECONDS);
+    }
+
+    // recupera el stock del directorio (si hay datos) y engancha la bitacora al catalogo
+    public static StockJournal open(Path dir, Catalog catalog, long snapshotSecs) throws IOException {
+        Files.createDirectories(dir);
+        long t0 = System.nanoTime();
+        long snap = latest(dir, "snapshot-", ".bin");
+        if (snap >= 0) loadSnapshot(dir.resolve("snapshot-" + snap + ".bin"), catalog);
+        long from = snap >= 0 ? snap : Math.max(0, oldest(dir));
+        long last = Math.max(from, latest(dir, "wal-", ".log"));
+        long replayed = 0;
+        for (long s = from; s <= last; s++) replayed += replay(dir.resolve("wal-" + s + ".log"), catalog);
+        System.out.printf("WAL: snapshot %s, %d registros reaplicados en %d ms%n",
+                snap >= 0 ? String.valueOf(snap) : "(ninguno)", replayed, (System.nanoTime() - t0) / 1_000_000);
+
+        // se empieza un segmento nuevo: lo recuperado queda fijo en una foto
+        StockJournal j = new StockJournal(dir, catalog, last + 1, snapshotSecs);
+        catalog.attachJournal(j);
+        j.snapshot();
+        return j;
+    }
+
+    // acepta un registro de compra; el llamador tiene los candados de los productos y llama
+    // antes de tocar el stock (si la bitacora esta detenida, Unavailable y nada cambia)
+    // devuelve el numero de registro para esperar su fsync con awaitDurable
+    synchronized long append(IntIntMap purchase) {
+        check();
+        record(purchase);
+        notifyAll(); // despierta al escritor
+        return appendedSeq;
+    }
+
+    // acepta las compras accepted[k] de un lote (combinador): entran todas o ninguna
+    // devuelve el numero del ultimo registro (un awaitDurable cubre el lote)
+    synchronized long append(IntIntMap[] purchases, boolean[] accepted, int n) {
+        check();
+        for (int k = 0; k < n; k++) if (accepted[k]) record(purchases[k]);
+        notifyAll();
+        return appendedSeq;
+    }
+
+    // agrega un registro a lo pendiente (con el monitor tomado)
+    private void record(IntIntMap purchase) {
+        ByteBuffer b = ByteBuffer.allocate(8 + purchase.size() * 8);
+        b.position(8);
+        for (int i = 0; i < purchase.size(); i++) b.putInt(purchase.keyAt(i)).putInt(-purchase.valueAt(i)); // delta negativo
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 8, b.capacity() - 8);
+        b.putInt(0, b.capacity() - 8).putInt(4, (int) crc.getValue());
+        pending.write(b.array(), 0, b.capacity());
+        appendedSeq++;
+    }
+
+    // espera a que el registro este en disco; varias compras comparten el mismo fsync
+    // Unavailable si la escritura fallo antes de llegar a seq (close escribe lo ya aceptado)
+    synchronized void awaitDurable(long seq) {
+        boolean interrupted = false;
+        while (durableSeq < seq && failure == null) {
+            try { wait(); } catch (InterruptedException e) { interrupted = true; }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durableSeq < seq) check();
+    }
+
+    private void check() {
+        if (failure != null) throw new Unavailable("Bitacora detenida por error de escritura: " + failure);
+        if (closed) throw new Unavailable("Bitacora cerrada");
+    }
+
+    // hilo escritor: junta todo lo pendiente, lo escribe y hace un solo fsync por lote
+    // tras un error de escritura se detiene: nada posterior se reporta como guardado
+    private void writeLoop() {
+        while (true) {
+            synchronized (this) {
+                while (pending.size() == 0 && !closed && failure == null) {
+                    try { wait(); } catch (InterruptedException e) { return; }
+                }
+                if (failure != null || closed && pending.size() == 0) return;
+            }
+            ioLock.lock();
+            try {
+                flushPending();
+            } catch (IOException e) {
+                return; // flushPending ya registro la falla y desperto a los que esperan
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    // registros tomados de lo pendiente y el numero del ultimo
+    private record Batch(byte[] bytes, long upto) {}
+
+    // escribe y sincroniza lo pendiente al segmento actual (con ioLock tomado)
+    private void flushPending() throws IOException {
+        write(takePending());
+    }
+
+    // saca lo pendiente sin escribirlo
+    private synchronized Batch takePending() throws IOException {
+        if (failure != null) throw failure;
+        byte[] bytes = pending.toByteArray();
+        pending = new ByteArrayOutputStream(Math.max(256, bytes.length));
+        return new Batch(bytes, appendedSeq);
+    }
+
+    // si write o force fallan, el lote no cuenta como guardado y la bitacora queda detenida
+    private void write(Batch batch) throws IOException {
+        try {
+            if (batch.bytes.length > 0) {
+                ByteBuffer b = ByteBuffer.wrap(batch.bytes);
+                while (b.hasRemaining()) channel.write(b);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR al escribir WAL (ya no se aceptan compras): " + e);
+            synchronized (this) { failure = e; notifyAll(); }
+            throw e;
+        }
+        synchronized (this) {
+            durableSeq = Math.max(durableSeq, batch.upto);
+            notifyAll();
+        }
+    }
+
+    // toma una foto consistente del stock y empieza un segmento nuevo
+    // los candados de todas las franjas se sostienen solo mientras se copian los numeros y se
+    // separan los registros anteriores a la foto; el fsync y la rotacion van despues, solo con
+    // ioLock (el escritor espera, las compras no: lo que registren ya cae en el segmento nuevo)
+    public void snapshot() throws IOException {
+        int[][] copy;
+        long snapSegment;
+        ioLock.lock();
+        try {
+            flushPending(); // el grueso se escribe antes de detener compras
+            Batch before;
+            catalog.lockAll();
+            try {
+                copy = catalog.stockCopy();
+                before = takePending(); // lo registrado entre el flush y la foto
+            } finally {
+                catalog.unlockAll();
+            }
+            write(before); // lo anterior a la foto queda en el segmento viejo
+            channel.close();
+            snapSegment = ++segment;
+            channel = openSegment(snapSegment);
+        } finally {
+            ioLock.unlock();
+        }
+        // la escritura de la foto ya no detiene a las compras
+        Path tmp = dir.resolve("snapshot-" + snapSegment + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(copy[0].length);
+            for (int i = 0; i < copy[0].length; i++) { out.writeInt(copy[0][i]); out.writeInt(copy[1][i]); }
+        }
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE)) { fc.force(true); }
+        Files.move(tmp, dir.resolve("snapshot-" + snapSegment + ".bin"), StandardCopyOption.ATOMIC_MOVE);
+        // lo anterior a la foto ya no hace falta
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                long n = number(p.getFileName().toString());
+                if (n >= 0 && n < snapSegment) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    // vacia lo pendiente y cierra el segmento (al apagar el servidor); las compras posteriores fallan
+    @Override
+    public void close() throws IOException {
+        snapshots.shutdownNow();
+        ioLock.lock();
+        try {
+            synchronized (this) {
+                if (closed) return;
+                closed = true; // no entra nada mas; lo ya aceptado se escribe abajo
+            }
+            if (failure == null) flushPending();
+        } finally {
+            synchronized (this) { notifyAll(); }
+            channel.close();
+            ioLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long n) throws IOException {
+        return FileChannel.open(dir.resolve("wal-" + n + ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void loadSnapshot(Path file, Catalog catalog) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                Product p = catalog.get(in.readInt());
+                int stock = in.readInt();
+                if (p != null) p.adjustStock(stock - p.stock); // ids que ya no existen se ignoran
+            }
+        }
+    }
+
+    // reaplica un segmento; se detiene en el primer registro incompleto o corrupto (escritura cortada)
+    private static long replay(Path file, Catalog catalog) throws IOException {
+        if (!Files.exists(file)) return 0;
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int len, crc;
+                byte[] body;
+                try {
+                    len = in.readInt();
+                    crc = in.readInt();
+                    if (len < 0 || len % 8 != 0 || len > (1 << 24)) break;
+                    body = in.readNBytes(len);
+                } catch (EOFException e) { break; }
+                if (body.length < len) break;
+                CRC32 c = new CRC32();
+                c.update(body);
+                if ((int) c.getValue() != crc) break;
+                ByteBuffer b = ByteBuffer.wrap(body);
+                while (b.hasRemaining()) {
+                    Product p = catalog.get(b.getInt());
+                    int delta = b.getInt();
+                    if (p != null) p.adjustStock(delta);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // numero de segmento de un archivo wal-/snapshot-, o -1
+    private static long number(String name) {
+        int dash = name.indexOf('-'), dot = name.lastIndexOf('.');
+        if (dash < 0 || dot < dash || !(name.startsWith("wal-") || name.startsWith("snapshot-"))) return -1;
+        try { return Long.parseLong(name.substring(dash + 1, dot)); }
+        catch (NumberFormatException e) { return -1; }
+    }
+
+    private static long latest(Path dir, String prefix, String suffix) throws IOException {
+        long best = -1;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path p : ds) best = Math.max(best, number(p.getFileName().toString()));
+        }
+        return best;
+    }
+
+    private static long oldest(Path dir) throws IOException {
+        long best = Long.MAX_VALUE;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "wal-*.log")) {
+            for (Path p : ds) {
+                long n = number(p.getFileName().toString());
+                if (n >= 0) best = Math.min(best, n);
+            }
+        }
+        return best == Long.MAX_VALUE ? -1 : best;
+    }
+}
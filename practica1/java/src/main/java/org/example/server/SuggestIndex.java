@@ -0,0 +1,234 @@
+package org.example.server;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SuggestIndex {
+    // indice de prefijos para SUGGEST: trie compacto (cada arista guarda un tramo de texto) sobre
+    // el nombre y la marca normalizados, con una clave por cada palabra (asi "inal" encuentra
+    // "Raton inalambrico"). Cada nodo guarda ya ordenados los primeros TOP productos de su subarbol
+    // (orden alfabetico por nombre y luego id): una consulta solo baja por el prefijo y copia n
+    static final int TOP = 20;
+
+    // orden de las sugerencias
+    static final Comparator<Product> RANK =
+            Comparator.comparing((Product p) -> p.name, String.CASE_INSENSITIVE_ORDER).thenComparingInt(p -> p.id);
+
+    private static final Product[] NONE = new Product[0];
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_KIDS = new Node[0];
+
+    private static final class Node {
+        // la arista es el tramo [from, to) de un texto ya normalizado (sin copiar subcadenas)
+        String src;
+        int from, to;
+        char[] keys = NO_KEYS;        // primera letra de cada hijo (ordenadas)
+        Node[] kids = NO_KIDS;
+        Product[] own = NONE;         // productos cuya clave termina aqui
+        int ownCount;
+        Product[] top = NONE;         // primeros TOP del subarbol (se reemplaza, no se modifica)
+
+        Node(String src, int from, int to) { this.src = src; this.from = from; this.to = to; }
+
+        int length() { return to - from; }
+
+        char at(int i) { return src.charAt(from + i); }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? kids[i] : null;
+        }
+
+        void putChild(Node n) {
+            char c = n.at(0);
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) { kids[i] = n; return; }
+            i = -i - 1;
+            char[] k = new char[keys.length + 1];
+            Node[] d = new Node[kids.length + 1];
+            System.arraycopy(keys, 0, k, 0, i);
+            System.arraycopy(kids, 0, d, 0, i);
+            k[i] = c;
+            d[i] = n;
+            System.arraycopy(keys, i, k, i + 1, keys.length - i);
+            System.arraycopy(kids, i, d, i + 1, kids.length - i);
+            keys = k;
+            kids = d;
+        }
+    }
+
+    private Node root = new Node("", 0, 0);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // hasta n productos cuyo nombre o marca tiene una palabra que empieza con 'prefix'
+    public List<Product> suggest(String prefix, int n) {
+        String key = SearchIndex.norm(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                node = node.child(key.charAt(i));
+                if (node == null) return List.of();
+                int m = Math.min(node.length(), key.length() - i);
+                if (!key.regionMatches(i, node.src, node.from, m)) return List.of();
+                i += m; // si el prefijo termina a media arista, el nodo de abajo ya es la respuesta
+            }
+            Product[] top = node.top;
+            return List.of(Arrays.copyOf(top, Math.min(n, top.length)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // indexa p en lugar de old (null si p es nuevo) en una sola escritura
+    public void replace(Product old, Product p) {
+        lock.writeLock().lock();
+        try {
+            if (old != null) forEachKey(old, (text, at) -> delete(text, at, old));
+            forEachKey(p, (text, at) -> insert(text, at, p, false));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // arma el indice completo de una vez: insertando en orden de RANK cada nodo solo agrega al
+    // final de su lista hasta llenarla, sin reordenar
+    public void rebuild(Collection<Product> products) {
+        Product[] sorted = products.toArray(new Product[0]);
+        Arrays.sort(sorted, RANK);
+        lock.writeLock().lock();
+        try {
+            root = new Node("", 0, 0);
+            for (Product p : sorted)
+                forEachKey(p, (text, at) -> insert(text, at, p, true));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // clave = text desde 'at' hasta el final; sorted: llegan en orden de RANK (carga completa)
+    private void insert(String key, int at, Product p, boolean sorted) {
+        Node n = root;
+        int i = at;
+        offer(n, p, sorted);
+        while (i < key.length()) {
+            Node c = n.child(key.charAt(i));
+            if (c == null) { // resto de la clave en una sola arista nueva
+                c = new Node(key, i, key.length());
+                n.putChild(c);
+                n = c;
+                offer(n, p, sorted);
+                break;
+            }
+            int common = 1, max = Math.min(c.length(), key.length() - i);
+            while (common < max && c.at(common) == key.charAt(i + common)) common++;
+            if (common < c.length()) { // la clave se separa a media arista: se parte en dos
+                Node mid = new Node(c.src, c.from, c.from + common);
+                c.from += common;
+                mid.putChild(c);
+                mid.top = c.top;
+                n.putChild(mid);
+                c = mid;
+            }
+            i += common;
+            n = c;
+            offer(n, p, sorted);
+        }
+        if (n.ownCount == n.own.length) n.own = Arrays.copyOf(n.own, Math.max(1, n.ownCount * 2));
+        n.own[n.ownCount++] = p;
+    }
+
+    private void delete(String key, int at, Product p) {
+        List<Node> path = new ArrayList<>();
+        Node n = root;
+        path.add(n);
+        int i = at;
+        while (i < key.length()) {
+            n = n.child(key.charAt(i));
+            if (n == null || n.length() > key.length() - i || !key.regionMatches(i, n.src, n.from, n.length()))
+                return; // no estaba indexado
+            i += n.length();
+            path.add(n);
+        }
+        for (int k = 0; k < n.ownCount; k++) {
+            if (n.own[k] != p) continue;
+            n.own[k] = n.own[--n.ownCount];
+            n.own[n.ownCount] = null;
+            break;
+        }
+        // de abajo hacia arriba: cada nodo se recalcula con los top ya corregidos de sus hijos
+        for (int k = path.size() - 1; k >= 0; k--) {
+            Node x = path.get(k);
+            if (contains(x.top, p)) recompute(x);
+        }
+    }
+
+    // mete p en el top del nodo si le toca (sin repetir productos)
+    // sorted: p no va antes que nadie de la lista, solo se agrega al final si cabe
+    private static void offer(Node n, Product p, boolean sorted) {
+        Product[] top = n.top;
+        if (sorted) {
+            if (top.length == TOP || top.length > 0 && top[top.length - 1] == p) return;
+            Product[] next = Arrays.copyOf(top, top.length + 1);
+            next[top.length] = p;
+            n.top = next;
+            return;
+        }
+        if (contains(top, p)) return;
+        if (top.length == TOP && RANK.compare(p, top[TOP - 1]) >= 0) return;
+        int at = top.length;
+        while (at > 0 && RANK.compare(p, top[at - 1]) < 0) at--;
+        Product[] next = new Product[Math.min(TOP, top.length + 1)];
+        System.arraycopy(top, 0, next, 0, at);
+        next[at] = p;
+        System.arraycopy(top, at, next, at + 1, next.length - at - 1);
+        n.top = next;
+    }
+
+    // top del nodo a partir de sus propios productos y los top de sus hijos
+    private static void recompute(Node n) {
+        TreeSet<Product> best = new TreeSet<>(RANK);
+        for (int k = 0; k < n.ownCount; k++) keep(best, n.own[k]);
+        for (Node c : n.kids)
+            for (Product p : c.top) keep(best, p);
+        n.top = best.toArray(NONE);
+    }
+
+    private static void keep(TreeSet<Product> best, Product p) {
+        best.add(p);
+        if (best.size() > TOP) best.pollLast();
+    }
+
+    private static boolean contains(Product[] top, Product p) {
+        for (Product q : top) if (q == p) return true;
+        return false;
+    }
+
+    private interface KeyConsumer {
+        void accept(String text, int at);
+    }
+
+    // claves de un producto: cada palabra del nombre y de la marca hasta el final del texto
+    // (un mismo producto puede repetir clave, p.ej. marca igual a una palabra del nombre: se omite)
+    private static void forEachKey(Product p, KeyConsumer out) {
+        String name = SearchIndex.norm(p.name), brand = SearchIndex.norm(p.brand);
+        wordStarts(name, null, out);
+        wordStarts(brand, name, out);
+    }
+
+    private static void wordStarts(String s, String seen, KeyConsumer out) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i)) || i > 0 && !Character.isWhitespace(s.charAt(i - 1)))
+                continue;
+            if (seen != null && isKeyOf(seen, s, i)) continue;
+            out.accept(s, i);
+        }
+    }
+
+    // true si s[i..] ya es una clave de 'text' (empieza en inicio de palabra y llega al final)
+    private static boolean isKeyOf(String text, String s, int i) {
+        int len = s.length() - i, at = text.length() - len;
+        return at >= 0 && (at == 0 || Character.isWhitespace(text.charAt(at - 1))) && text.regionMatches(at, s, i, len);
+    }
+}
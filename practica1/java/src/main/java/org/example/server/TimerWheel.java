@@ -0,0 +1,115 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerWheel {
+    // rueda de tiempo jerarquica: programar y cancelar cuestan O(1) sin importar cuantos timers haya
+    // nivel 0: 256 ranuras de 1 tick; niveles 1..3: 64 ranuras, cada una 64 veces mas ancha que la anterior
+    // cuando el nivel 0 da la vuelta, la ranura que toca del nivel superior se redistribuye hacia abajo
+    private static final int[] BITS = {8, 6, 6, 6};
+    private static final int[] SHIFT = {0, 8, 14, 20};
+    private static final long SPAN = 1L << 26; // ticks que cubre la rueda completa
+
+    // nodo intrusivo: quien necesite un timer hereda de esta clase (sin objetos extra por timer)
+    public abstract static class Timeout {
+        private long deadline;          // tick en que vence
+        private Timeout prev, next;     // lista de su ranura
+        private int level = -1, slot;   // -1 = no programado
+
+        // se llama en el hilo de la rueda, fuera de su candado
+        protected abstract void expire();
+    }
+
+    private final long tickMillis;
+    private final Timeout[][] slots = new Timeout[BITS.length][];
+    private long now;                   // tick actual
+    private final Thread thread;
+
+    public TimerWheel(long tickMillis, String name) {
+        this.tickMillis = tickMillis;
+        for (int l = 0; l < BITS.length; l++) slots[l] = new Timeout[1 << BITS[l]];
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // (re)programa un timer para que venza en delayMillis
+    public synchronized void schedule(Timeout t, long delayMillis) {
+        if (t.level >= 0) unlink(t);
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        t.deadline = now + Math.min(ticks, SPAN - 1);
+        place(t);
+    }
+
+    public synchronized void cancel(Timeout t) {
+        if (t.level >= 0) unlink(t);
+    }
+
+    // avanza un tick y devuelve los timers vencidos
+    synchronized List<Timeout> tick() {
+        now++;
+        // primero los niveles altos, asi lo que baja puede volver a bajar en el mismo tick
+        for (int l = BITS.length - 1; l >= 1; l--) {
+            if ((now & ((1L << SHIFT[l]) - 1)) != 0) continue; // el nivel de abajo no dio la vuelta
+            int s = (int) ((now >>> SHIFT[l]) & ((1 << BITS[l]) - 1));
+            Timeout t = slots[l][s];
+            slots[l][s] = null;
+            while (t != null) {
+                Timeout nx = t.next;
+                t.prev = t.next = null;
+                place(t);
+                t = nx;
+            }
+        }
+        int s = (int) (now & ((1 << BITS[0]) - 1));
+        Timeout t = slots[0][s];
+        slots[0][s] = null;
+        List<Timeout> due = new ArrayList<>();
+        while (t != null) {
+            Timeout nx = t.next;
+            t.prev = t.next = null;
+            t.level = -1;
+            due.add(t);
+            t = nx;
+        }
+        return due;
+    }
+
+    // coloca el timer en el nivel cuyo rango cubre lo que le falta
+    private void place(Timeout t) {
+        long d = t.deadline - now;
+        int l = 0;
+        while (l < BITS.length - 1 && d >= (1L << (SHIFT[l] + BITS[l]))) l++;
+        int s = (int) ((t.deadline >>> SHIFT[l]) & ((1 << BITS[l]) - 1));
+        t.level = l;
+        t.slot = s;
+        t.prev = null;
+        t.next = slots[l][s];
+        if (t.next != null) t.next.prev = t;
+        slots[l][s] = t;
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) t.prev.next = t.next;
+        else slots[t.level][t.slot] = t.next;
+        if (t.next != null) t.next.prev = t.prev;
+        t.prev = t.next = null;
+        t.level = -1;
+    }
+
+    // hilo de la rueda: avanza tantos ticks como haya pasado el reloj
+    private void run() {
+        long start = System.nanoTime(), done = 0;
+        while (true) {
+            try { Thread.sleep(tickMillis); } catch (InterruptedException e) { return; }
+            long target = (System.nanoTime() - start) / 1_000_000 / tickMillis;
+            for (; done < target; done++) {
+                for (Timeout t : tick()) {
+                    try { t.expire(); }
+                    catch (RuntimeException e) { System.out.println("ERROR en timer: " + e); }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+    private static final byte FF = (byte) 0xFF;
+
+    private final BinaryProtocol proto = new BinaryProtocol(new ClientHandler(Catalog.sample()));
+
+    private byte[] feed(byte... b) {
+        return proto.feed(ByteBuffer.wrap(b));
+    }
+
+    private static byte[] varint(long v) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryProtocol.writeVarint(out, v);
+        return out.toByteArray();
+    }
+
+    @Test
+    void getAnswersIdPriceAndStock() {
+        byte[] id = varint(201);
+        byte[] req = new byte[1 + id.length];
+        req[0] = BinaryProtocol.OP_GET;
+        System.arraycopy(id, 0, req, 1, id.length);
+        byte[] resp = feed(req);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(BinaryProtocol.STATUS_OK);
+        BinaryProtocol.writeVarint(expected, 201);
+        BinaryProtocol.writeVarint(expected, 39900);
+        BinaryProtocol.writeVarint(expected, 20);
+        assertArrayEquals(expected.toByteArray(), resp);
+    }
+
+    @Test
+    void incompleteVarintWaitsForTheRest() {
+        assertEquals(0, feed(BinaryProtocol.OP_GET, (byte) 0xC9).length);
+        assertFalse(proto.closed());
+        assertEquals(BinaryProtocol.STATUS_OK, feed((byte) 0x01)[0]);
+    }
+
+    @Test
+    void largestIntStillDecodes() {
+        byte[] resp = feed(BinaryProtocol.OP_GET, FF, FF, FF, FF, (byte) 0x07); // Integer.MAX_VALUE
+        assertFalse(proto.closed());
+        assertEquals(BinaryProtocol.STATUS_ERROR, resp[0]); // no existe ese id, pero se decodifico
+    }
+
+    @Test
+    void varintAboveIntRangeClosesTheConnection() {
+        feed(BinaryProtocol.OP_GET, FF, FF, FF, FF, (byte) 0x0F); // 2^32 - 1: no se trunca a -1
+        assertTrue(proto.closed());
+    }
+
+    // 10 bytes completos con el bit 63 encendido: antes se leia como "incompleto" y la conexion
+    // se quedaba esperando para siempre
+    @Test
+    void tenByteVarintClosesTheConnection() {
+        feed(BinaryProtocol.OP_GET, FF, FF, FF, FF, FF, FF, FF, FF, FF, (byte) 0x01);
+        assertTrue(proto.closed());
+    }
+
+    @Test
+    void writeVarintUsesSevenBitsPerByte() {
+        assertArrayEquals(new byte[]{0}, varint(0));
+        assertArrayEquals(new byte[]{0x7F}, varint(127));
+        assertArrayEquals(new byte[]{(byte) 0x80, 0x01}, varint(128));
+        assertArrayEquals(new byte[]{(byte) 0xBC, (byte) 0xB7, 0x06}, varint(105_404));
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogTest {
+    @TempDir
+    Path dir;
+
+    private static IntIntMap cart(int... idQty) {
+        IntIntMap m = new IntIntMap();
+        for (int i = 0; i < idQty.length; i += 2) m.put(idQty[i], idQty[i + 1]);
+        return m;
+    }
+
+    private static List<Integer> ids(List<Product> ps) {
+        return ps.stream().map(p -> p.id).toList();
+    }
+
+    @Test
+    void purchaseIsAllOrNothing() {
+        Catalog c = Catalog.sample();
+        assertFalse(c.tryPurchase(cart(201, 1, 101, 9))); // 101 solo tiene 8
+        assertEquals(20, c.get(201).stock);
+        assertFalse(c.tryPurchase(cart(999, 1)));
+        assertTrue(c.tryPurchase(cart(201, 1, 101, 8)));
+        assertEquals(0, c.get(101).stock);
+    }
+
+    // un lote valida cada carrito contando lo que ya tomaron los anteriores del mismo lote
+    @Test
+    void batchCountsUnitsTakenByEarlierCarts() {
+        Catalog c = Catalog.sample();
+        IntIntMap[] reqs = {cart(201, 15), cart(201, 15), cart(201, 5, 401, 1)};
+        boolean[] results = new boolean[3];
+        assertTrue(c.applyBatch(reqs, holds(3), 3, results));
+        assertArrayEquals(new boolean[]{true, false, true}, results);
+        assertEquals(0, c.get(201).stock);
+        assertEquals(29, c.get(401).stock);
+    }
+
+    // si la bitacora rechaza el lote no queda ningun carrito a medias
+    @Test
+    void batchRejectedByTheJournalChangesNothing() throws Exception {
+        Catalog c = Catalog.sample();
+        StockJournal.open(dir, c, 3600).close();
+        IntIntMap[] reqs = {cart(201, 1), cart(101, 1)};
+        boolean[] results = new boolean[2];
+        assertFalse(c.applyBatch(reqs, holds(2), 2, results));
+        assertEquals(20, c.get(201).stock);
+        assertEquals(8, c.get(101).stock);
+    }
+
+    @Test
+    void batchWhoseFsyncFailsGoesBackToStock() throws Exception {
+        Catalog c = Catalog.sample();
+        StockJournalTest.breakChannel(StockJournal.open(dir, c, 3600));
+        IntIntMap[] reqs = {cart(201, 3), cart(201, 30), cart(101, 2)};
+        boolean[] results = new boolean[3];
+        assertFalse(c.applyBatch(reqs, holds(3), 3, results));
+        assertArrayEquals(new boolean[]{true, false, true}, results);
+        assertEquals(20, c.get(201).stock);
+        assertEquals(8, c.get(101).stock);
+        assertTrue(c.sales().top(5).isEmpty());
+    }
+
+    @Test
+    void combinerReportsUnsavedPurchases() throws Exception {
+        Catalog c = Catalog.sample();
+        c.enableCombiner(8);
+        StockJournalTest.breakChannel(StockJournal.open(dir, c, 3600));
+        assertThrows(StockJournal.Unavailable.class, () -> c.tryPurchase(cart(201, 1)));
+        assertEquals(20, c.get(201).stock);
+        assertFalse(c.tryPurchase(cart(201, 21))); // sin stock falla antes de llegar a la bitacora
+    }
+
+    @Test
+    void addReplacesAProductInEveryIndex() {
+        Catalog c = Catalog.sample();
+        int gen = c.generation();
+        c.add(new Product(150, "Calcetin", "Nike", "ROPA", 10, 1));
+        c.add(new Product(201, "Playera", "Adidas", "HOGAR", 1, 1)); // cambia de tipo
+        assertEquals(List.of(150), ids(c.listByType("ropa")));
+        assertEquals(List.of(201, 301), ids(c.listByType("HOGAR")));
+        assertEquals(List.of(101, 150, 201, 301, 401), ids(c.search("")));
+        assertEquals(List.of(201), ids(c.search("playera")));
+        assertEquals(List.of(150), ids(c.suggest("calc", 5)));
+        assertTrue(c.generation() > gen);
+    }
+
+    @Test
+    void paginationResumesAfterTheCursor() {
+        Catalog c = Catalog.sample();
+        assertEquals(List.of(101, 201), ids(c.search("", Integer.MIN_VALUE, 2)));
+        assertEquals(List.of(301, 401), ids(c.search("", 201, 2)));
+        assertEquals(List.of(), ids(c.listByType("ropa", 201, 5)));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<Integer, Reservations.Hold>[] holds(int n) {
+        return new Map[n];
+    }
+}
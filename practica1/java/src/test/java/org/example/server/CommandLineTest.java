@@ -0,0 +1,60 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandLineTest {
+    private final CommandLine cl = new CommandLine();
+
+    @Test
+    void splitsOnAnyWhitespace() {
+        cl.parse("  add\t101 \r 2\n");
+        assertEquals(3, cl.count());
+        assertEquals("add", cl.text(0));
+        assertEquals(101, cl.intAt(1));
+        assertEquals(2, cl.intAt(2));
+    }
+
+    @Test
+    void opIgnoresCaseButNeedsTheWholeWord() {
+        assertEquals(CommandLine.CHECKOUT, cl.parse("checkOUT").op());
+        assertEquals(CommandLine.TOP, cl.parse("top 5").op());
+        assertEquals(CommandLine.UNKNOWN, cl.parse("ADX 1 2").op()); // mismo largo y letra que ADD
+        assertEquals(CommandLine.UNKNOWN, cl.parse("CARTS").op());
+        assertEquals(CommandLine.UNKNOWN, cl.parse("").op());
+        assertEquals(CommandLine.UNKNOWN, cl.parse("   ").op());
+    }
+
+    @Test
+    void intAtFollowsIntegerParseInt() {
+        cl.parse("X 2147483647 -2147483648 2147483648 +7 - 12a 99999999999999999999");
+        assertEquals(Integer.MAX_VALUE, cl.intAt(1));
+        assertEquals(Integer.MIN_VALUE, cl.intAt(2));
+        assertEquals(CommandLine.BAD, cl.intAt(3));
+        assertEquals(7, cl.intAt(4));
+        assertEquals(CommandLine.BAD, cl.intAt(5));
+        assertEquals(CommandLine.BAD, cl.intAt(6));
+        assertEquals(CommandLine.BAD, cl.intAt(7));
+    }
+
+    @Test
+    void textKeepsInnerSpacesOfARange() {
+        cl.parse("SEARCH  raton   inalambrico ");
+        assertEquals("raton   inalambrico", cl.text(1, 3));
+        assertTrue(cl.equals(1, "raton"));
+        assertFalse(cl.equals(1, "RATON"));
+        assertTrue(cl.is(1, "RATON"));
+    }
+
+    @Test
+    void growsPastTheInitialTokenArrays() {
+        StringBuilder sb = new StringBuilder("LIST");
+        for (int i = 0; i < 50; i++) sb.append(' ').append(i);
+        cl.parse(sb);
+        assertEquals(51, cl.count());
+        assertEquals(49, cl.intAt(50));
+        // reutilizada con una linea corta no conserva tokens de la anterior
+        assertEquals(1, cl.parse("CART").count());
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntIntMapTest {
+    @Test
+    void keepsInsertionOrderAcrossRemove() {
+        IntIntMap m = new IntIntMap();
+        for (int i = 0; i < 20; i++) m.put(i * 7, i); // pasa de busqueda lineal a tabla
+        assertTrue(m.remove(21));
+        assertFalse(m.remove(21));
+        assertEquals(19, m.size());
+        assertEquals(28, m.keyAt(3));
+        assertEquals(-1, m.get(21, -1));
+        assertEquals(4, m.get(28, -1));
+    }
+
+    @Test
+    void mergeInsertsOrAdds() {
+        IntIntMap m = new IntIntMap(1);
+        m.merge(5, 2);
+        m.merge(5, 3);
+        m.merge(-5, 1);
+        assertEquals(5, m.get(5, 0));
+        assertEquals(1, m.get(-5, 0));
+        IntIntMap c = m.copy();
+        c.put(5, 0);
+        assertEquals(5, m.get(5, 0)); // la copia no comparte arreglos
+    }
+
+    // operaciones al azar contra LinkedHashMap (mismo orden de insercion) cruzando el paso
+    // de lineal a tabla y los cambios de tamano en ambos sentidos
+    @Test
+    void matchesLinkedHashMapUnderRandomOps() {
+        Random rnd = new Random(42);
+        IntIntMap m = new IntIntMap();
+        Map<Integer, Integer> ref = new LinkedHashMap<>();
+        for (int step = 0; step < 200_000; step++) {
+            int key = rnd.nextInt(64) * 0x10000; // claves con los mismos bits bajos
+            switch (rnd.nextInt(4)) {
+                case 0, 1 -> { int v = rnd.nextInt(); m.put(key, v); ref.put(key, v); }
+                case 2 -> assertEquals(ref.remove(key) != null, m.remove(key));
+                default -> assertEquals(ref.getOrDefault(key, -1), m.get(key, -1));
+            }
+            if (step % 1000 == 0) {
+                List<Integer> keys = new ArrayList<>();
+                for (int i = 0; i < m.size(); i++) keys.add(m.keyAt(i));
+                assertEquals(new ArrayList<>(ref.keySet()), keys);
+            }
+            if (rnd.nextInt(5000) == 0) { m.clear(); ref.clear(); }
+        }
+    }
+}
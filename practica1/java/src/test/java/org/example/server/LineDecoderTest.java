@@ -0,0 +1,85 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDecoderTest {
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> drain(LineDecoder d) {
+        List<String> out = new ArrayList<>();
+        for (String l; (l = d.next()) != null; ) out.add(l);
+        return out;
+    }
+
+    @Test
+    void joinsPiecesAndStripsCrLf() {
+        LineDecoder d = new LineDecoder();
+        d.feed(bytes("AD"));
+        assertNull(d.next());
+        d.feed(bytes("D 1 2\r\nCA"));
+        assertEquals(List.of("ADD 1 2"), drain(d));
+        d.feed(bytes("RT\n\n"));
+        assertEquals(List.of("CART", ""), drain(d));
+    }
+
+    @Test
+    void keepsUtf8SplitAcrossReads() {
+        byte[] b = "SEARCH sartén\n".getBytes(StandardCharsets.UTF_8);
+        LineDecoder d = new LineDecoder();
+        int cut = 12; // a media 'e' con acento (2 bytes)
+        d.feed(ByteBuffer.wrap(b, 0, cut));
+        assertNull(d.next());
+        d.feed(ByteBuffer.wrap(b, cut, b.length - cut));
+        assertEquals("SEARCH sartén", d.next());
+    }
+
+    // rafaga de comandos en trozos de tamano arbitrario: cada linea sale una vez y en orden
+    // (lo ya entregado se compacta entre lecturas sin perder la linea en curso)
+    @Test
+    void pipelinedBurstInOddChunks() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) sb.append("ADD ").append(i).append(" 1\n");
+        byte[] all = sb.toString().getBytes(StandardCharsets.UTF_8);
+        LineDecoder d = new LineDecoder();
+        List<String> got = new ArrayList<>();
+        for (int pos = 0, step = 1; pos < all.length; pos += step, step = step % 97 + 7) {
+            d.feed(ByteBuffer.wrap(all, pos, Math.min(step, all.length - pos)));
+            got.addAll(drain(d));
+        }
+        assertEquals(5000, got.size());
+        for (int i = 0; i < got.size(); i++) assertEquals("ADD " + i + " 1", got.get(i));
+        assertFalse(d.overflow());
+    }
+
+    @Test
+    void lineLongerThanTheLimitOverflows() {
+        LineDecoder d = new LineDecoder();
+        byte[] chunk = new byte[1024];
+        java.util.Arrays.fill(chunk, (byte) 'x');
+        for (int i = 0; i * chunk.length <= LineDecoder.MAX_LINE; i++) {
+            d.feed(ByteBuffer.wrap(chunk));
+            assertNull(d.next());
+        }
+        assertTrue(d.overflow());
+        d.feed(ByteBuffer.wrap(chunk)); // ya no se acumula mas
+        assertTrue(d.overflow());
+    }
+
+    @Test
+    void manyShortLinesDoNotOverflow() {
+        LineDecoder d = new LineDecoder();
+        String line = "LIST ropa\n".repeat(LineDecoder.MAX_LINE / 5);
+        d.feed(bytes(line));
+        assertEquals(LineDecoder.MAX_LINE / 5, drain(d).size());
+        assertFalse(d.overflow());
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductTableTest {
+    private static Product product(int id) {
+        return new Product(id, "p" + id, "m", "T", 1.0, 1);
+    }
+
+    @Test
+    void putReplacesAndReturnsThePrevious() {
+        ProductTable t = new ProductTable();
+        Product a = product(7), b = product(7);
+        assertNull(t.put(a));
+        assertSame(a, t.put(b));
+        assertSame(b, t.get(7));
+        assertSame(b, t.putIfAbsent(product(7)));
+        assertEquals(1, t.size());
+    }
+
+    @Test
+    void findsEveryIdAfterManyResizes() {
+        ProductTable t = new ProductTable();
+        for (int i = 0; i < 10_000; i++) t.put(product(i * 1024)); // ids que chocan en los bits bajos
+        assertEquals(10_000, t.size());
+        for (int i = 0; i < 10_000; i++) assertEquals(i * 1024, t.get(i * 1024).id);
+        assertNull(t.get(1));
+        assertNull(t.get(-1024));
+        Set<Integer> ids = new HashSet<>();
+        for (Product p : t.values()) ids.add(p.id);
+        assertEquals(10_000, ids.size());
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesAnalyticsTest {
+    // flujo sesgado con muchos mas ids que contadores: se compara contra las cuentas exactas
+    @Test
+    void spaceSavingBoundsHoldOnASkewedStream() {
+        SalesAnalytics sales = new SalesAnalytics();
+        Catalog empty = new Catalog(); // sin productos: solo se alimenta el sketch
+        Map<Integer, Long> exact = new HashMap<>();
+        Random rnd = new Random(7);
+        long total = 0;
+        IntIntMap req = new IntIntMap();
+        for (int i = 0; i < 300_000; i++) {
+            int id = (int) (50_000 * Math.pow(rnd.nextDouble(), 4)); // pocos ids concentran las ventas
+            int qty = 1 + rnd.nextInt(3);
+            req.clear();
+            req.put(id, qty);
+            sales.sold(empty, req);
+            exact.merge(id, (long) qty, Long::sum);
+            total += qty;
+        }
+        List<SalesAnalytics.Seller> all = sales.top(SalesAnalytics.CAPACITY);
+        assertEquals(SalesAnalytics.CAPACITY, all.size());
+        Set<Integer> seen = new HashSet<>();
+        for (SalesAnalytics.Seller s : all) {
+            long real = exact.get(s.id());
+            assertTrue(s.count() >= real, "count es cota superior");
+            assertTrue(s.count() - s.error() <= real, "count - error es cota inferior");
+            seen.add(s.id());
+        }
+        for (var e : exact.entrySet())
+            if (e.getValue() > total / SalesAnalytics.CAPACITY)
+                assertTrue(seen.contains(e.getKey()), "falta el id frecuente " + e.getKey());
+        // con este sesgo los primeros no tienen error y salen en su orden exacto
+        SalesAnalytics.Seller first = sales.top(1).get(0);
+        assertEquals(0, first.error());
+        assertEquals(exact.get(first.id()), first.count());
+    }
+
+    @Test
+    void typeTotalsUseThePriceInCents() {
+        Catalog c = Catalog.sample();
+        IntIntMap req = new IntIntMap();
+        req.put(201, 2);
+        req.put(101, 1);
+        c.sales().sold(c, req);
+        String stats = c.sales().stats();
+        assertTrue(stats.contains("ventas unidades=3"), stats);
+        assertTrue(stats.contains("ventas_tipo ROPA unidades=2 ingresos=798.00"), stats);
+        assertTrue(stats.contains("ventas_tipo ELECTRONICA unidades=1 ingresos=899.00"), stats);
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockJournalTest {
+    @TempDir
+    Path dir;
+
+    private static IntIntMap cart(int id, int qty) {
+        IntIntMap m = new IntIntMap();
+        m.put(id, qty);
+        return m;
+    }
+
+    // abre la bitacora sobre un catalogo de ejemplo nuevo (recupera lo que haya en dir)
+    private Catalog reopen() throws IOException {
+        Catalog c = Catalog.sample();
+        StockJournal.open(dir, c, 3600).close();
+        return c;
+    }
+
+    @Test
+    void purchasesSurviveARestart() throws IOException {
+        Catalog c = Catalog.sample();
+        StockJournal j = StockJournal.open(dir, c, 3600);
+        assertTrue(c.tryPurchase(cart(201, 3)));
+        assertTrue(c.tryPurchase(cart(101, 1)));
+        j.close();
+        Catalog back = reopen();
+        assertEquals(17, back.get(201).stock);
+        assertEquals(7, back.get(101).stock);
+        assertEquals(reopen().get(201).stock, 17); // la foto del arranque anterior ya lo incluye
+    }
+
+    @Test
+    void snapshotRotatesAndKeepsLaterRecords() throws IOException {
+        Catalog c = Catalog.sample();
+        StockJournal j = StockJournal.open(dir, c, 3600);
+        assertTrue(c.tryPurchase(cart(201, 1)));
+        j.snapshot();
+        assertTrue(c.tryPurchase(cart(201, 2)));
+        j.close();
+        assertEquals(17, reopen().get(201).stock);
+    }
+
+    // una escritura cortada al final o un registro con CRC invalido detienen la reaplicacion ahi:
+    // lo anterior cuenta, lo danado no
+    @Test
+    void replayStopsAtACorruptRecord() throws IOException {
+        Catalog c = Catalog.sample();
+        StockJournal j = StockJournal.open(dir, c, 3600);
+        assertTrue(c.tryPurchase(cart(201, 1)));
+        assertTrue(c.tryPurchase(cart(201, 2)));
+        j.close();
+        Path wal = onlyWal();
+        byte[] b = Files.readAllBytes(wal);
+        b[b.length - 1] ^= 0x01; // cantidad del ultimo registro: ya no coincide su CRC
+        Files.write(wal, b);
+        assertEquals(19, reopen().get(201).stock);
+    }
+
+    @Test
+    void replayIgnoresATruncatedTail() throws IOException {
+        Catalog c = Catalog.sample();
+        StockJournal j = StockJournal.open(dir, c, 3600);
+        assertTrue(c.tryPurchase(cart(201, 4)));
+        j.close();
+        Files.write(onlyWal(), new byte[]{0, 0, 0, 8, 1, 2}, StandardOpenOption.APPEND);
+        assertEquals(16, reopen().get(201).stock);
+    }
+
+    @Test
+    void closedJournalRejectsPurchasesWithoutTouchingStock() throws IOException {
+        Catalog c = Catalog.sample();
+        StockJournal.open(dir, c, 3600).close();
+        assertThrows(StockJournal.Unavailable.class, () -> c.tryPurchase(cart(201, 1)));
+        assertEquals(20, c.get(201).stock);
+    }
+
+    // un fsync que falla: la compra no se confirma, las unidades regresan y no cuenta como venta
+    @Test
+    void failedWriteUndoesThePurchase() throws Exception {
+        Catalog c = Catalog.sample();
+        StockJournal j = StockJournal.open(dir, c, 3600);
+        breakChannel(j);
+        assertThrows(StockJournal.Unavailable.class, () -> c.tryPurchase(cart(201, 5)));
+        assertEquals(20, c.get(201).stock);
+        assertTrue(c.sales().top(5).isEmpty());
+        assertThrows(StockJournal.Unavailable.class, () -> c.tryPurchase(cart(101, 1))); // detenida
+        assertEquals(8, c.get(101).stock);
+    }
+
+    private Path onlyWal() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-"))
+                    .filter(p -> p.toFile().length() > 0).findFirst().orElseThrow();
+        }
+    }
+
+    // cierra el canal del segmento por debajo: la siguiente escritura falla como un error de disco
+    static void breakChannel(StockJournal j) throws Exception {
+        var f = StockJournal.class.getDeclaredField("channel");
+        f.setAccessible(true);
+        ((FileChannel) f.get(j)).close();
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+    // tick de una hora: el hilo de la rueda no avanza durante la prueba; se avanza a mano con tick()
+    private static final long TICK = 3_600_000L;
+
+    private static final class Named extends TimerWheel.Timeout {
+        final String name;
+        Named(String name) { this.name = name; }
+        @Override protected void expire() {}
+    }
+
+    // avanza hasta 'ticks' y anota en que tick vencio cada timer
+    private static List<String> run(TimerWheel w, int ticks) {
+        List<String> fired = new ArrayList<>();
+        for (int i = 1; i <= ticks; i++)
+            for (TimerWheel.Timeout t : w.tick()) fired.add(((Named) t).name + "@" + i);
+        return fired;
+    }
+
+    @Test
+    void firesOnItsTickAtEveryLevel() {
+        TimerWheel w = new TimerWheel(TICK, "test-wheel");
+        // nivel 0, justo en el borde del nivel 1, nivel 1 y nivel 2 (bajan en cascada al acercarse)
+        w.schedule(new Named("a"), 3 * TICK);
+        w.schedule(new Named("b"), 256 * TICK);
+        w.schedule(new Named("c"), 1000 * TICK);
+        w.schedule(new Named("d"), 20_000 * TICK);
+        assertEquals(List.of("a@3", "b@256", "c@1000", "d@20000"), run(w, 20_001));
+    }
+
+    @Test
+    void cascadeAfterTheClockMoved() {
+        TimerWheel w = new TimerWheel(TICK, "test-wheel");
+        run(w, 200); // los niveles altos ya no estan alineados con el inicio
+        w.schedule(new Named("x"), 70 * TICK);
+        w.schedule(new Named("y"), 5000 * TICK);
+        assertEquals(List.of("x@70", "y@5000"), run(w, 5001));
+    }
+
+    @Test
+    void cancelAndRescheduleMoveTheTimer() {
+        TimerWheel w = new TimerWheel(TICK, "test-wheel");
+        Named gone = new Named("gone"), moved = new Named("moved");
+        w.schedule(gone, 500 * TICK);
+        w.schedule(moved, 10 * TICK);
+        w.cancel(gone);
+        w.cancel(gone); // cancelar dos veces no hace nada
+        w.schedule(moved, 300 * TICK);
+        assertEquals(List.of("moved@300"), run(w, 600));
+    }
+
+    @Test
+    void delayRoundsUpToAtLeastOneTick() {
+        TimerWheel w = new TimerWheel(TICK, "test-wheel");
+        w.schedule(new Named("zero"), 0);
+        w.schedule(new Named("part"), TICK + 1);
+        assertEquals(List.of("zero@1", "part@2"), run(w, 3));
+    }
+}